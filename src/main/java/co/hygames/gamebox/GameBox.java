@@ -43,7 +43,7 @@ public class GameBox {
     static {
         try {
             final String ID = "gamebox";
-            final SemanticVersion VERSION = new SemanticVersion("1.0.0");
+            final SemanticVersion VERSION = SemanticVersion.of("1.0.0");
             final String NAME = "GameBox";
             final String DESCRIPTION = "GameBox is a collection of inventory games";
             final String SOURCE = "https://github.com/hygames-team/gamebox";
@@ -0,0 +1,43 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.exceptions.module;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown if modules depend on each other in a cycle
+ */
+public class ModuleDependencyCycleException extends ModuleDependencyException {
+    private static final long serialVersionUID = 1L;
+    private final List<String> cycle;
+
+    /**
+     * @param cycle module IDs along the cycle. The first module is repeated at the end
+     */
+    public ModuleDependencyCycleException(List<String> cycle) {
+        super("Found a dependency cycle: " + String.join(" -> ", cycle));
+        this.cycle = Collections.unmodifiableList(new ArrayList<>(cycle));
+    }
+
+    public List<String> getCycle() {
+        return cycle;
+    }
+}
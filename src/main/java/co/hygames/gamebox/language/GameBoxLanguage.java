@@ -22,6 +22,7 @@ import co.hygames.gamebox.GameBox;
 import co.hygames.gamebox.language.messages.Message;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 public class GameBoxLanguage extends Language {
@@ -30,11 +31,26 @@ public class GameBoxLanguage extends Language {
 
     }
 
+    /**
+     * Handle of a message key together with the language it was looked up in. The pair is replaced as a whole,
+     * so a reader never combines the handle of one language with another language.
+     */
+    private static final class KeyHandle {
+        private final Language language;
+        private final int handle;
+
+        private KeyHandle(Language language, int handle) {
+            this.language = language;
+            this.handle = handle;
+        }
+    }
+
     public enum Messages implements Message<String> {
         NAME("name");
 
         static Language language;
         String key;
+        private volatile KeyHandle handle;
 
         Messages(String key) {
             this.key = key;
@@ -44,14 +60,36 @@ public class GameBoxLanguage extends Language {
             return this.key;
         }
 
+        private int getHandle(Language current) {
+            KeyHandle cached = handle;
+            if (cached == null || cached.language != current) {
+                handle = cached = new KeyHandle(current, current.getHandle(key));
+            }
+            return cached.handle;
+        }
+
+        private Message<String> getMessage(Language current) {
+            int handle = getHandle(current);
+            // without a handle, the lookup by key names the missing key in the exception
+            return handle < 0 ? current.getMessage(key) : current.getMessage(handle);
+        }
+
         @Override
         public String get() {
-            return language.getMessage(key).get();
+            return getMessage(language).get();
         }
 
         @Override
         public String resolve(Map<String, String> context) {
-            return language.getMessage(key).resolve(context);
+            return getMessage(language).resolve(context);
+        }
+
+        public String get(Locale locale) {
+            return language.getMessage(key, locale).get();
+        }
+
+        public String resolve(Locale locale, Map<String, String> context) {
+            return language.getMessage(key, locale).resolve(context);
         }
     }
 
@@ -60,6 +98,7 @@ public class GameBoxLanguage extends Language {
 
         static Language language;
         String key;
+        private volatile KeyHandle handle;
 
         Lists(String key) {
             this.key = key;
@@ -69,14 +108,36 @@ public class GameBoxLanguage extends Language {
             return this.key;
         }
 
+        private int getHandle(Language current) {
+            KeyHandle cached = handle;
+            if (cached == null || cached.language != current) {
+                handle = cached = new KeyHandle(current, current.getHandle(key));
+            }
+            return cached.handle;
+        }
+
+        private Message<List<String>> getMessageList(Language current) {
+            int handle = getHandle(current);
+            // without a handle, the lookup by key names the missing key in the exception
+            return handle < 0 ? current.getMessageList(key) : current.getMessageList(handle);
+        }
+
         @Override
         public List<String> get() {
-            return language.getMessageList(key).get();
+            return getMessageList(language).get();
         }
 
         @Override
         public List<String> resolve(Map<String, String> context) {
-            return language.getMessageList(key).resolve(context);
+            return getMessageList(language).resolve(context);
+        }
+
+        public List<String> get(Locale locale) {
+            return language.getMessageList(key, locale).get();
+        }
+
+        public List<String> resolve(Locale locale, Map<String, String> context) {
+            return language.getMessageList(key, locale).resolve(context);
         }
     }
 }
@@ -30,19 +30,39 @@ import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 public abstract class Language implements MessageSource {
     protected static Yaml yaml = new Yaml();
+    private static final int MAX_CACHED_LOCALES = 8;
+    private static final Language[] NO_LANGUAGES = new Language[0];
     protected String defaultLanguage = "lang_en.yml";
-    protected Map<String, Message<String>> messages = new HashMap<>();
-    protected Map<String, Message<List<String>>> lists = new HashMap<>();
+    private final MessageKeyIndex keys = new MessageKeyIndex();
+    // messages and lists by the handle of their key
+    @SuppressWarnings("unchecked")
+    private Message<String>[] messages = new Message[32];
+    @SuppressWarnings("unchecked")
+    private Message<List<String>>[] lists = new Message[32];
+    private int messageCount = 0;
+    private int listCount = 0;
+    private File languageFolder;
+    // locale specific messages by locale, most specific first; the least recently used locale is dropped
+    private final Map<Locale, Language[]> locales = new LinkedHashMap<Locale, Language[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Locale, Language[]> eldest) {
+            return size() > MAX_CACHED_LOCALES;
+        }
+    };
 
     public Language() {}
 
@@ -55,21 +75,35 @@ public abstract class Language implements MessageSource {
     }
 
     protected void setup(File languageFolder, File source, String languageFile, String defaultFile) throws LanguageException {
+        this.languageFolder = languageFolder;
         if (source.getName().endsWith(".jar")) {
-            loadMessagesFromJar(source, defaultFile);
+            loadMessagesFromJar(source, defaultFile, languageFolder);
         } else {
             loadMessagesFromFolder(source, defaultFile);
         }
         loadMessagesFromFolder(languageFolder, languageFile);
     }
 
-    private void loadMessagesFromJar(File jar) throws LanguageException {
-        loadMessagesFromJar(jar, this.defaultLanguage);
-    }
-
-    private void loadMessagesFromJar(File jar, String language) throws LanguageException {
-        Map messageMap = getMessageMapFromJar(jar, language);
-        readLanguageMap(messageMap, this.messages, this.lists);
+    /**
+     * Load a language file from a jar. The compiled bundle is cached in the given folder.
+     * The folder belongs to a single module, so the bundle is not named after the jar; a new version of the jar
+     * replaces the bundle of the old one instead of adding another.
+     */
+    private void loadMessagesFromJar(File jar, String language, File bundleFolder) throws LanguageException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            JarEntry entry = jarFile.getJarEntry("language/" + language);
+            if (entry == null) {
+                throw new LanguageException("Language file '" + language + "' not found in jar " + jarFile.getName());
+            }
+            File bundle = new File(bundleFolder, ".jar-" + language + ".bundle");
+            loadBundle(bundle, entry.getSize(), entry.getCrc(), () -> {
+                synchronized (yaml) {
+                    return yaml.load(jarFile.getInputStream(entry));
+                }
+            });
+        } catch (IOException e) {
+            throw new LanguageException("Exception while loading messages from " + language + " in the jar " + jar.getName(), e);
+        }
     }
 
     private Map getMessageMapFromJar(File jar, String languageFile) throws LanguageException {
@@ -81,7 +115,11 @@ public abstract class Language implements MessageSource {
             if (entry == null) {
                 throw new LanguageException("Language file '" + languageFile + "' not found in jar " + jarFile.getName());
             }
-            toReturn = yaml.load(jarFile.getInputStream(entry));
+            try (InputStream in = jarFile.getInputStream(entry)) {
+                synchronized (yaml) {
+                    toReturn = yaml.load(in);
+                }
+            }
         } catch (IOException e) {
             throw new LanguageException("Exception while loading messages from " + languageFile + " in the jar " + jar.getName());
         } finally {
@@ -94,47 +132,179 @@ public abstract class Language implements MessageSource {
         return toReturn;
     }
 
-    private void loadMessagesFromFolder(File folder) throws LanguageException {
-        loadMessagesFromJar(folder, defaultLanguage);
-    }
-
+    /**
+     * Load a language file from a folder. The compiled bundle is cached next to it.
+     */
     private void loadMessagesFromFolder(File folder, String language) throws LanguageException {
         File languageFile = new File(folder, language);
+        if (!languageFile.isFile()) {
+            throw new LanguageException("Failed to find the language file '" + languageFile + "'");
+        }
+        File bundle = new File(folder, "." + language + ".bundle");
         try {
-            Map messageMap = yaml.load(new FileInputStream(languageFile));
-            readLanguageMap(messageMap, this.messages, this.lists);
-        } catch (FileNotFoundException e) {
-            throw new LanguageException("Failed to find the language file '" + languageFile + "'", e);
+            loadBundle(bundle, languageFile.length(), languageFile.lastModified(), () -> {
+                try (InputStream in = new FileInputStream(languageFile)) {
+                    synchronized (yaml) {
+                        return yaml.load(in);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new LanguageException("Exception while loading messages from " + language + " in the directory " + folder.getName(), e);
+        }
+    }
+
+    /**
+     * Index the messages of a compiled bundle. If the bundle is missing or outdated, it is compiled from the source.
+     * The messages are decoded from the bundle on first use.
+     */
+    private void loadBundle(File bundleFile, long sourceSize, long sourceStamp, LanguageSource source) throws IOException {
+        LanguageBundle bundle = openBundle(bundleFile, sourceSize, sourceStamp);
+        if (bundle == null) {
+            BundleSink entries = new BundleSink();
+            Map messageMap = source.load();
+            if (messageMap != null) readLanguageMap(messageMap, entries);
+            try {
+                LanguageBundle.write(bundleFile, sourceSize, sourceStamp, entries.entries);
+                bundle = openBundle(bundleFile, sourceSize, sourceStamp);
+            } catch (IOException e) {
+                // e.g. a read only folder. The parsed messages are used directly instead.
+            }
+            if (bundle == null) {
+                IndexSink index = new IndexSink();
+                entries.entries.forEach((key, value) -> {
+                    @SuppressWarnings("unchecked") List<String> list = value instanceof List ? (List<String>) value : null;
+                    if (list != null) index.list(key, list);
+                    else index.message(key, (String) value);
+                });
+                return;
+            }
+        }
+        for (int index = 0; index < bundle.size(); index++) {
+            String key = bundle.getKey(index);
+            if (bundle.isList(index)) putList(key, bundle.getMessageList(index));
+            else putMessage(key, bundle.getMessage(index));
+        }
+    }
+
+    private static LanguageBundle openBundle(File bundleFile, long sourceSize, long sourceStamp) {
+        try {
+            return LanguageBundle.open(bundleFile, sourceSize, sourceStamp);
+        } catch (IOException e) {
+            return null;
         }
     }
 
+    private interface LanguageSource {
+        Map load() throws IOException;
+    }
+
     private Map getMessageMapFromDirectory(File directory, String language) throws LanguageException {
         try {
             File languageFile = new File(directory, language);
-            return yaml.load(new FileInputStream(languageFile));
+            try (InputStream in = new FileInputStream(languageFile)) {
+                synchronized (yaml) {
+                    return yaml.load(in);
+                }
+            }
         } catch (IOException e) {
             throw new LanguageException("Exception while loading messages from " + language + " in the directory " + directory.getName());
         }
     }
 
-    private void readLanguageMap(Map messageMap, Map<String, Message<String>> messages, Map<String, Message<List<String>>> lists) {
-        readLanguageMap(messageMap, "", messages, lists);
+    private void readLanguageMap(Map messageMap, LanguageSink sink) {
+        readLanguageMap(messageMap, new StringBuilder(), sink);
     }
 
-    private void readLanguageMap(Map messageMap, String path, Map<String, Message<String>> messages, Map<String, Message<List<String>>> lists) {
+    /**
+     * Walk the nested sections. The dotted path is built in one shared builder, so only the keys of the actual
+     * messages and lists become strings.
+     */
+    private void readLanguageMap(Map messageMap, StringBuilder path, LanguageSink sink) {
+        int sectionLength = path.length();
         for (Object key : messageMap.keySet()) {
             Object entry = messageMap.get(key);
-            String currentPath = path.isEmpty()?key.toString():path + "." + key.toString();
-            if (entry instanceof Map) readLanguageMap((Map) entry, currentPath, messages, lists);
+            path.setLength(sectionLength);
+            if (sectionLength > 0) path.append('.');
+            path.append(key);
+            if (entry instanceof Map) readLanguageMap((Map) entry, path, sink);
             else if (entry instanceof List) {
                 @SuppressWarnings("unchecked") List<String> list = (List<String>) entry;
-                lists.put(currentPath, new SimpleMessageList(list, currentPath));
+                sink.list(path.toString(), list);
             }
-            else if (entry instanceof String) messages.put(currentPath, new SimpleMessage((String) entry, currentPath));
+            else if (entry instanceof String) sink.message(path.toString(), (String) entry);
             else {
                 GameBox.getInstance().getLogger().warning("Unexpected entry in language file...");
             }
         }
+        path.setLength(sectionLength);
+    }
+
+    private interface LanguageSink {
+        void message(String key, String message);
+
+        void list(String key, List<String> list);
+    }
+
+    /**
+     * Adds the read messages and lists to the key index of this language
+     */
+    private class IndexSink implements LanguageSink {
+        @Override
+        public void message(String key, String message) {
+            putMessage(key, new SimpleMessage(message, key));
+        }
+
+        @Override
+        public void list(String key, List<String> list) {
+            putList(key, new SimpleMessageList(list, key));
+        }
+    }
+
+    private static class MapSink implements LanguageSink {
+        private final Map<String, Message<String>> messages = new HashMap<>();
+        private final Map<String, Message<List<String>>> lists = new HashMap<>();
+
+        @Override
+        public void message(String key, String message) {
+            messages.put(key, new SimpleMessage(message, key));
+        }
+
+        @Override
+        public void list(String key, List<String> list) {
+            lists.put(key, new SimpleMessageList(list, key));
+        }
+    }
+
+    /**
+     * Collects the raw messages and lists in file order, to compile them into a bundle
+     */
+    private static class BundleSink implements LanguageSink {
+        private final Map<String, Object> entries = new LinkedHashMap<>();
+
+        @Override
+        public void message(String key, String message) {
+            entries.put(key, message);
+        }
+
+        @Override
+        public void list(String key, List<String> list) {
+            entries.put(key, list);
+        }
+    }
+
+    private void putMessage(String key, Message<String> message) {
+        int handle = keys.add(key);
+        if (handle >= messages.length) messages = Arrays.copyOf(messages, Math.max(handle + 1, messages.length * 2));
+        if (messages[handle] == null) messageCount++;
+        messages[handle] = message;
+    }
+
+    private void putList(String key, Message<List<String>> list) {
+        int handle = keys.add(key);
+        if (handle >= lists.length) lists = Arrays.copyOf(lists, Math.max(handle + 1, lists.length * 2));
+        if (lists[handle] == null) listCount++;
+        lists[handle] = list;
     }
 
     public Map<String, Message> collectMissingMessages(File defaultDirectory, String defaultFile, File languageDirectory, String languageFile) throws LanguageException {
@@ -152,12 +322,14 @@ public abstract class Language implements MessageSource {
         }
 
         // collect all keys and corresponding messages
-        Map<String, Message<String>> defaultMessages = new HashMap<>();
-        Map<String, Message<List<String>>> defaultLists = new HashMap<>();
-        readLanguageMap(defaultMessagesMap, defaultMessages, defaultLists);
-        Map<String, Message<String>> messages = new HashMap<>();
-        Map<String, Message<List<String>>> lists = new HashMap<>();
-        readLanguageMap(messagesMap, messages, lists);
+        MapSink defaults = new MapSink();
+        readLanguageMap(defaultMessagesMap, defaults);
+        Map<String, Message<String>> defaultMessages = defaults.messages;
+        Map<String, Message<List<String>>> defaultLists = defaults.lists;
+        MapSink configured = new MapSink();
+        readLanguageMap(messagesMap, configured);
+        Map<String, Message<String>> messages = configured.messages;
+        Map<String, Message<List<String>>> lists = configured.lists;
 
         // ignore keys that only show up in the configured language
         // collect keys that show up in the default file but not in the configured one
@@ -175,17 +347,169 @@ public abstract class Language implements MessageSource {
         return toReturn;
     }
 
+    /**
+     * Look up the handle of a key once, to get its message or list by array access afterwards.
+     * Handles stay valid for the lifetime of this language.
+     *
+     * @param key message or list key
+     * @return the handle of the key, or a negative value if the key is unknown
+     */
+    public int getHandle(String key) {
+        return keys.find(key);
+    }
+
     @Override
     public Message<String> getMessage(String key) {
-        Message<String> message = messages.get(key);
+        Message<String> message = findMessage(key);
         if (message != null) return message;
         throw new MissingMessageException("Unknown Message key '" + key + "'");
     }
 
+    /**
+     * @param handle handle of the key
+     * @return the message
+     * @throws MissingMessageException if there is no message for the handle
+     * @see #getHandle(String)
+     */
+    public Message<String> getMessage(int handle) {
+        if (handle >= 0 && handle < messages.length && messages[handle] != null) return messages[handle];
+        throw new MissingMessageException("Unknown Message key '" + (handle >= 0 && handle < keys.size() ? keys.getKey(handle) : handle) + "'");
+    }
+
+    @Override
+    public Message<String> findMessage(String key) {
+        int handle = keys.find(key);
+        return handle < 0 || handle >= messages.length ? null : messages[handle];
+    }
+
     @Override
     public Message<List<String>> getMessageList(String key) {
-        Message<List<String>> list = lists.get(key);
+        Message<List<String>> list = findMessageList(key);
+        if (list != null) return list;
+        throw new MissingListException("Unknown List key '" + key + "'");
+    }
+
+    /**
+     * @param handle handle of the key
+     * @return the list
+     * @throws MissingListException if there is no list for the handle
+     * @see #getHandle(String)
+     */
+    public Message<List<String>> getMessageList(int handle) {
+        if (handle >= 0 && handle < lists.length && lists[handle] != null) return lists[handle];
+        throw new MissingListException("Unknown List key '" + (handle >= 0 && handle < keys.size() ? keys.getKey(handle) : handle) + "'");
+    }
+
+    @Override
+    public Message<List<String>> findMessageList(String key) {
+        int handle = keys.find(key);
+        return handle < 0 || handle >= lists.length ? null : lists[handle];
+    }
+
+    /**
+     * Find a message in the language of a locale. Falls back from the region to the base language and then to the
+     * language of the server, e.g. 'lang_de_AT.yml', 'lang_de.yml' and then this language.
+     *
+     * @param key    message key
+     * @param locale locale of the reader, or null for the language of the server
+     * @return the message or null, if the key is unknown
+     */
+    @Override
+    public Message<String> findMessage(String key, Locale locale) {
+        for (Language language : getLocaleLanguages(locale)) {
+            Message<String> message = language.findMessage(key);
+            if (message != null) return message;
+        }
+        return findMessage(key);
+    }
+
+    @Override
+    public Message<String> getMessage(String key, Locale locale) {
+        Message<String> message = findMessage(key, locale);
+        if (message != null) return message;
+        throw new MissingMessageException("Unknown Message key '" + key + "'");
+    }
+
+    /**
+     * @param key    list key
+     * @param locale locale of the reader, or null for the language of the server
+     * @return the list or null, if the key is unknown
+     * @see #findMessage(String, Locale)
+     */
+    @Override
+    public Message<List<String>> findMessageList(String key, Locale locale) {
+        for (Language language : getLocaleLanguages(locale)) {
+            Message<List<String>> list = language.findMessageList(key);
+            if (list != null) return list;
+        }
+        return findMessageList(key);
+    }
+
+    @Override
+    public Message<List<String>> getMessageList(String key, Locale locale) {
+        Message<List<String>> list = findMessageList(key, locale);
         if (list != null) return list;
         throw new MissingListException("Unknown List key '" + key + "'");
     }
+
+    /**
+     * The messages of a locale are loaded on the first request for it. Only a few locales are kept at a time,
+     * so the memory does not depend on the number of installed languages.
+     *
+     * @return the languages of a locale, most specific first
+     */
+    private Language[] getLocaleLanguages(Locale locale) {
+        if (locale == null || languageFolder == null || locale.getLanguage().isEmpty()) return NO_LANGUAGES;
+        Language[] languages;
+        synchronized (locales) {
+            languages = locales.get(locale);
+        }
+        if (languages != null) return languages;
+        // loaded without holding the lock, so requests for cached locales do not wait for the file system
+        List<Language> found = new ArrayList<>(2);
+        if (!locale.getCountry().isEmpty()) {
+            addLocaleLanguage(found, "lang_" + locale.getLanguage() + "_" + locale.getCountry() + ".yml");
+        }
+        addLocaleLanguage(found, "lang_" + locale.getLanguage() + ".yml");
+        synchronized (locales) {
+            // a concurrent request may have loaded the locale in the meantime
+            Language[] loaded = locales.get(locale);
+            if (loaded != null) return loaded;
+            languages = found.toArray(NO_LANGUAGES);
+            locales.put(locale, languages);
+            return languages;
+        }
+    }
+
+    private void addLocaleLanguage(List<Language> languages, String languageFile) {
+        if (!new File(languageFolder, languageFile).isFile()) return;
+        Language language = new LocaleLanguage();
+        try {
+            language.loadMessagesFromFolder(languageFolder, languageFile);
+            languages.add(language);
+        } catch (LanguageException e) {
+            // fall back to the next language
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Messages of a single locale file, without defaults
+     */
+    private static final class LocaleLanguage extends Language {
+    }
+
+    protected int getCachedLocaleCount() {
+        synchronized (locales) {
+            return locales.size();
+        }
+    }
+
+    protected int getMessageCount() {
+        return messageCount;
+    }
+
+    protected int getListCount() {
+        return listCount;
+    }
 }
@@ -0,0 +1,303 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.language;
+
+import co.hygames.gamebox.language.messages.Message;
+import co.hygames.gamebox.language.messages.SimpleMessage;
+import co.hygames.gamebox.language.messages.SimpleMessageList;
+import co.hygames.gamebox.utilities.FileUtility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled, memory mapped form of a language file.
+ *
+ * The bundle is generated from the YAML file and stamped with the size and modification of its source, so a changed
+ * source is detected. Only the keys are read when a bundle is opened. Messages and lists are decoded from the
+ * mapped file on their first access.
+ *
+ * Layout, big endian:
+ * <pre>
+ * header:  int magic, int format version, long source size, long source stamp, int entry count
+ * entries: int key offset, int key length, int type, int value offset
+ * pool:    keys as UTF-8, messages as (int length, UTF-8), lists as (int count, count * (int length, UTF-8))
+ * </pre>
+ *
+ * @author Niklas Eicker
+ */
+final class LanguageBundle {
+    private static final int MAGIC = 0x47424C42;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int ENTRY_SIZE = 4 * 4;
+    private static final int TYPE_MESSAGE = 0;
+    private static final int TYPE_LIST = 1;
+
+    private final ByteBuffer buffer;
+    private final String[] keys;
+
+    private LanguageBundle(ByteBuffer buffer, String[] keys) {
+        this.buffer = buffer;
+        this.keys = keys;
+    }
+
+    /**
+     * @param file        the bundle
+     * @param sourceSize  size of the source the bundle has to be generated from
+     * @param sourceStamp modification stamp of that source
+     * @return the bundle, or null if it does not exist, belongs to another version of the source or is broken
+     * @throws IOException if the bundle cannot be mapped
+     */
+    static LanguageBundle open(File file, long sourceSize, long sourceStamp) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) return null;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) return null;
+            if (buffer.getLong(8) != sourceSize || buffer.getLong(16) != sourceStamp) return null;
+            int count = buffer.getInt(24);
+            if (!fits(buffer, HEADER_SIZE, (long) count * ENTRY_SIZE)) return null;
+            String[] keys = new String[count];
+            for (int index = 0; index < keys.length; index++) {
+                int entry = HEADER_SIZE + index * ENTRY_SIZE;
+                int keyOffset = buffer.getInt(entry);
+                int keyLength = buffer.getInt(entry + 4);
+                // values are checked now, so that a broken bundle is rebuilt instead of failing on first use
+                if (!fits(buffer, keyOffset, keyLength) || !isValidValue(buffer, buffer.getInt(entry + 8), buffer.getInt(entry + 12))) {
+                    return null;
+                }
+                keys[index] = decode(buffer, keyOffset, keyLength);
+            }
+            return new LanguageBundle(buffer, keys);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write a bundle. It is moved into place once complete.
+     *
+     * @param file        the bundle
+     * @param sourceSize  size of the source
+     * @param sourceStamp modification stamp of the source
+     * @param entries     messages as String and lists as List of String by their key
+     * @throws IOException if the bundle cannot be written
+     */
+    static void write(File file, long sourceSize, long sourceStamp, Map<String, Object> entries) throws IOException {
+        int poolStart = HEADER_SIZE + entries.size() * ENTRY_SIZE;
+        ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        DataOutputStream pool = new DataOutputStream(poolBytes);
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream(entries.size() * ENTRY_SIZE);
+        DataOutputStream table = new DataOutputStream(tableBytes);
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            table.writeInt(poolStart + pool.size());
+            table.writeInt(key.length);
+            pool.write(key);
+            boolean list = entry.getValue() instanceof List;
+            table.writeInt(list ? TYPE_LIST : TYPE_MESSAGE);
+            table.writeInt(poolStart + pool.size());
+            if (list) {
+                List<?> lines = (List<?>) entry.getValue();
+                pool.writeInt(lines.size());
+                for (Object line : lines) {
+                    writeString(pool, String.valueOf(line));
+                }
+            } else {
+                writeString(pool, (String) entry.getValue());
+            }
+        }
+        // a unique name, so that concurrent writers of the same bundle do not truncate each other's file
+        File temporary = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp").toFile();
+        try {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceStamp);
+                out.writeInt(entries.size());
+                tableBytes.writeTo(out);
+                poolBytes.writeTo(out);
+            }
+            FileUtility.moveAtomically(temporary, file);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static boolean isValidValue(ByteBuffer buffer, int type, int offset) {
+        if (!fits(buffer, offset, 4)) return false;
+        if (type == TYPE_MESSAGE) return fits(buffer, offset + 4L, buffer.getInt(offset));
+        if (type != TYPE_LIST) return false;
+        int lines = buffer.getInt(offset);
+        if (lines < 0) return false;
+        long position = offset + 4L;
+        for (int line = 0; line < lines; line++) {
+            if (!fits(buffer, position, 4)) return false;
+            int length = buffer.getInt((int) position);
+            if (!fits(buffer, position + 4, length)) return false;
+            position += 4L + length;
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the range lies within the bundle
+     */
+    private static boolean fits(ByteBuffer buffer, long offset, long length) {
+        return offset >= 0 && length >= 0 && offset + length <= buffer.limit();
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    boolean isList(int index) {
+        return buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE + 8) == TYPE_LIST;
+    }
+
+    /**
+     * @return the message of an entry, decoded on first access
+     */
+    Message<String> getMessage(int index) {
+        return new LazyMessage(this, index);
+    }
+
+    /**
+     * @return the list of an entry, decoded on first access
+     */
+    Message<List<String>> getMessageList(int index) {
+        return new LazyMessageList(this, index);
+    }
+
+    private SimpleMessage decodeMessage(int index) {
+        int offset = buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE + 12);
+        return new SimpleMessage(decode(buffer, offset + 4, buffer.getInt(offset)), keys[index]);
+    }
+
+    private SimpleMessageList decodeMessageList(int index) {
+        int offset = buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE + 12);
+        String[] lines = new String[buffer.getInt(offset)];
+        offset += 4;
+        for (int line = 0; line < lines.length; line++) {
+            int length = buffer.getInt(offset);
+            lines[line] = decode(buffer, offset + 4, length);
+            offset += 4 + length;
+        }
+        return new SimpleMessageList(Arrays.asList(lines), keys[index]);
+    }
+
+    private static final class LazyMessage implements Message<String> {
+        private final LanguageBundle bundle;
+        private final int index;
+        private volatile SimpleMessage message;
+
+        private LazyMessage(LanguageBundle bundle, int index) {
+            this.bundle = bundle;
+            this.index = index;
+        }
+
+        private SimpleMessage message() {
+            SimpleMessage decoded = message;
+            if (decoded == null) message = decoded = bundle.decodeMessage(index);
+            return decoded;
+        }
+
+        @Override
+        public String get() {
+            return message().get();
+        }
+
+        @Override
+        public String resolve(Map<String, String> context) {
+            return message().resolve(context);
+        }
+
+        @Override
+        public String getKey() {
+            return bundle.keys[index];
+        }
+    }
+
+    private static final class LazyMessageList implements Message<List<String>> {
+        private final LanguageBundle bundle;
+        private final int index;
+        private volatile SimpleMessageList list;
+
+        private LazyMessageList(LanguageBundle bundle, int index) {
+            this.bundle = bundle;
+            this.index = index;
+        }
+
+        private SimpleMessageList list() {
+            SimpleMessageList decoded = list;
+            if (decoded == null) list = decoded = bundle.decodeMessageList(index);
+            return decoded;
+        }
+
+        @Override
+        public List<String> get() {
+            return list().get();
+        }
+
+        @Override
+        public List<String> resolve(Map<String, String> context) {
+            return list().resolve(context);
+        }
+
+        @Override
+        public String getKey() {
+            return bundle.keys[index];
+        }
+    }
+}
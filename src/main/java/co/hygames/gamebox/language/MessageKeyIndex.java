@@ -0,0 +1,104 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.language;
+
+import java.util.Arrays;
+
+/**
+ * Maps message keys to dense int handles.
+ *
+ * The keys are interned and kept in a single open addressing table with linear probing. Handles are assigned in
+ * the order the keys are added and never change, so they can be cached and used as array indices.
+ *
+ * @author Niklas Eicker
+ */
+final class MessageKeyIndex {
+    static final int MISSING = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] handles = new int[INITIAL_CAPACITY];
+    private String[] keysByHandle = new String[INITIAL_CAPACITY / 2];
+    private int size = 0;
+
+    /**
+     * @param key message key
+     * @return the handle of the key, that is assigned now if the key is new
+     */
+    int add(String key) {
+        int slot = slot(key);
+        if (keys[slot] != null) return handles[slot];
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            slot = slot(key);
+        }
+        int handle = size++;
+        key = key.intern();
+        keys[slot] = key;
+        handles[slot] = handle;
+        if (handle == keysByHandle.length) keysByHandle = Arrays.copyOf(keysByHandle, handle * 2);
+        keysByHandle[handle] = key;
+        return handle;
+    }
+
+    /**
+     * @param key message key
+     * @return the handle of the key or {@link #MISSING}
+     */
+    int find(String key) {
+        int slot = slot(key);
+        return keys[slot] == null ? MISSING : handles[slot];
+    }
+
+    String getKey(int handle) {
+        return keysByHandle[handle];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it belongs
+     */
+    private int slot(String key) {
+        int mask = keys.length - 1;
+        int hash = key.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String current;
+        while ((current = keys[slot]) != null) {
+            if (current == key || current.equals(key)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldHandles = handles;
+        keys = new String[oldKeys.length * 2];
+        handles = new int[oldKeys.length * 2];
+        for (int index = 0; index < oldKeys.length; index++) {
+            if (oldKeys[index] == null) continue;
+            int slot = slot(oldKeys[index]);
+            keys[slot] = oldKeys[index];
+            handles[slot] = oldHandles[index];
+        }
+    }
+}
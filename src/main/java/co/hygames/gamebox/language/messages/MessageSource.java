@@ -19,6 +19,7 @@
 package co.hygames.gamebox.language.messages;
 
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Interface for supplying messages via keys.
@@ -29,4 +30,37 @@ public interface MessageSource {
     Message<String> getMessage(String key);
 
     Message<List<String>> getMessageList(String key);
+
+    /**
+     * @param key message key
+     * @return the message or null, if the key is unknown
+     */
+    Message<String> findMessage(String key);
+
+    /**
+     * @param key list key
+     * @return the list or null, if the key is unknown
+     */
+    Message<List<String>> findMessageList(String key);
+
+    /**
+     * @param key    message key
+     * @param locale locale of the reader, or null for the default language
+     * @return the message in the language of the locale, or in the default language
+     */
+    default Message<String> getMessage(String key, Locale locale) {
+        return getMessage(key);
+    }
+
+    default Message<List<String>> getMessageList(String key, Locale locale) {
+        return getMessageList(key);
+    }
+
+    default Message<String> findMessage(String key, Locale locale) {
+        return findMessage(key);
+    }
+
+    default Message<List<String>> findMessageList(String key, Locale locale) {
+        return findMessageList(key);
+    }
 }
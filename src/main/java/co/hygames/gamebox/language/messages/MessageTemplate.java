@@ -0,0 +1,131 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.language.messages;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A message compiled into literal text and placeholder slots.
+ *
+ * Placeholders are written as '%name%' and looked up in the context by the whole placeholder, including the percent
+ * signs. Unknown placeholders are kept as they are. Replacements are inserted literally.
+ *
+ * Rendering is a single pass over the segments into a per thread builder, so the only allocation is the result.
+ * A message without placeholders renders to its source string.
+ *
+ * @author Niklas Eicker
+ */
+public final class MessageTemplate {
+    private static final int MAX_CACHED_BUILDER_CAPACITY = 8 * 1024;
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final String source;
+    // literals[0] placeholders[0] literals[1] ... placeholders[n - 1] literals[n]
+    private final String[] literals;
+    private final String[] placeholders;
+
+    private MessageTemplate(String source, String[] literals, String[] placeholders) {
+        this.source = source;
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * @param message the message text
+     * @return the compiled message
+     */
+    public static MessageTemplate compile(String message) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int literalStart = 0;
+        int index = 0;
+        while (index < message.length()) {
+            int end = placeholderEnd(message, index);
+            if (end < 0) {
+                index++;
+                continue;
+            }
+            literals.add(message.substring(literalStart, index));
+            placeholders.add(message.substring(index, end).intern());
+            literalStart = end;
+            index = end;
+        }
+        literals.add(message.substring(literalStart));
+        return new MessageTemplate(message, literals.toArray(new String[0]), placeholders.toArray(new String[0]));
+    }
+
+    /**
+     * @return end index of the placeholder starting at the given index, or -1 if there is none
+     */
+    private static int placeholderEnd(String message, int start) {
+        if (message.charAt(start) != '%') return -1;
+        for (int index = start + 1; index < message.length(); index++) {
+            char c = message.charAt(index);
+            if (c == '%') return index > start + 1 ? index + 1 : -1;
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * @param context replacements by placeholder, e.g. "%player%"
+     * @return the message with all known placeholders replaced
+     */
+    public String render(Map<String, String> context) {
+        if (placeholders.length == 0) return source;
+        StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        builder.append(literals[0]);
+        for (int index = 0; index < placeholders.length; index++) {
+            String value = context.get(placeholders[index]);
+            builder.append(value == null ? placeholders[index] : value);
+            builder.append(literals[index + 1]);
+        }
+        String result = builder.toString();
+        if (builder.capacity() > MAX_CACHED_BUILDER_CAPACITY) {
+            // do not keep huge buffers around for one long message
+            BUILDER.remove();
+        }
+        return result;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the placeholders of this message in order of appearance
+     */
+    public List<String> getPlaceholders() {
+        return Collections.unmodifiableList(Arrays.asList(placeholders));
+    }
+
+    public boolean hasPlaceholders() {
+        return placeholders.length > 0;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
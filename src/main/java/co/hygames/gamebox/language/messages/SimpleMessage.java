@@ -21,26 +21,22 @@ package co.hygames.gamebox.language.messages;
 import java.util.Map;
 
 public class SimpleMessage implements Message<String> {
-    private String message;
+    private MessageTemplate message;
     private String key;
 
     public SimpleMessage(String message, String key) {
-        this.message = message;
+        this.message = MessageTemplate.compile(message);
         this.key = key;
     }
 
     @Override
     public String get() {
-        return this.message;
+        return this.message.getSource();
     }
 
     @Override
     public String resolve(Map<String, String> context) {
-        String toReturn = this.message;
-        for (String placeholder : context.keySet()) {
-            toReturn = toReturn.replaceAll(placeholder, context.get(placeholder));
-        }
-        return toReturn;
+        return this.message.render(context);
     }
 
     @Override
@@ -19,15 +19,22 @@
 package co.hygames.gamebox.language.messages;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 public class SimpleMessageList implements Message<List<String>> {
     private List<String> message;
+    private MessageTemplate[] lines;
     private String key;
 
     public SimpleMessageList(List<String> message, String key) {
-        this.message = message;
+        this.message = Collections.unmodifiableList(new ArrayList<>(message));
+        this.lines = new MessageTemplate[message.size()];
+        for (int index = 0; index < lines.length; index++) {
+            lines[index] = MessageTemplate.compile(message.get(index));
+        }
         this.key = key;
     }
 
@@ -38,16 +45,28 @@ public class SimpleMessageList implements Message<List<String>> {
 
     @Override
     public List<String> resolve(Map<String, String> context) {
-        List<String> toReturn = new ArrayList<>();
-        message.stream().map((msg) -> toReturn.add(replaceAll(msg, context)));
+        List<String> toReturn = new ArrayList<>(lines.length);
+        for (MessageTemplate line : lines) {
+            toReturn.add(line.render(context));
+        }
         return toReturn;
     }
 
-    private String replaceAll(String msg, Map<String, String> context) {
-        for (String placeholder : context.keySet()) {
-            msg = msg.replaceAll(placeholder, context.get(placeholder));
+    /**
+     * Resolve all lines into a list that cannot be modified. It is backed by an array of exactly the number of lines,
+     * which makes it the cheapest option for lists that are sent often, like lore or tooltips.
+     *
+     * @param context   replacements by placeholder
+     * @param immutable whether the returned list can be read only
+     * @return the resolved lines
+     */
+    public List<String> resolve(Map<String, String> context, boolean immutable) {
+        if (!immutable) return resolve(context);
+        String[] toReturn = new String[lines.length];
+        for (int index = 0; index < lines.length; index++) {
+            toReturn[index] = lines[index].render(context);
         }
-        return msg;
+        return Collections.unmodifiableList(Arrays.asList(toReturn));
     }
 
     @Override
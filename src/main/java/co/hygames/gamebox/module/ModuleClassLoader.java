@@ -0,0 +1,115 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import co.hygames.gamebox.module.local.LocalModule;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class loader for the jar of a single module.
+ *
+ * Classes are looked up in the GameBox class loader first, then in the module jar and finally in the
+ * jars of the declared dependencies of the module. Dependencies are not followed transitively.
+ * The loader is closed when the module is unloaded, so its classes can be garbage collected.
+ *
+ * @author Niklas Eicker
+ */
+public class ModuleClassLoader extends URLClassLoader {
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final String moduleId;
+    private final List<ModuleClassLoader> dependencies;
+
+    /**
+     * @param localModule the module to load classes for
+     * @param parent the GameBox class loader
+     * @param dependencies class loaders of the loaded dependencies of the module
+     * @throws MalformedURLException if the location of the module jar is invalid
+     */
+    public ModuleClassLoader(LocalModule localModule, ClassLoader parent, List<ModuleClassLoader> dependencies) throws MalformedURLException {
+        super(new URL[]{localModule.getModuleJar().toURI().toURL()}, parent);
+        this.moduleId = localModule.getId();
+        this.dependencies = Collections.unmodifiableList(new ArrayList<>(dependencies));
+    }
+
+    /**
+     * Load the entry point of the module
+     *
+     * @param className fully qualified name of the class extending GameBoxModule
+     * @return the module class
+     * @throws ClassNotFoundException if the class is not found or does not extend GameBoxModule
+     */
+    public Class<? extends GameBoxModule> loadModuleClass(String className) throws ClassNotFoundException {
+        Class<?> clazz = loadClass(className);
+        if (!GameBoxModule.class.isAssignableFrom(clazz)) {
+            throw new ClassNotFoundException("The class '" + className + "' does not extend GameBoxModule");
+        }
+        return clazz.asSubclass(GameBoxModule.class);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            try {
+                return super.loadClass(name, resolve);
+            } catch (ClassNotFoundException e) {
+                for (ModuleClassLoader dependency : dependencies) {
+                    Class<?> clazz = dependency.findModuleClass(name);
+                    if (clazz != null) {
+                        if (resolve) resolveClass(clazz);
+                        return clazz;
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Look for a class only in the jar of this module
+     */
+    private Class<?> findModuleClass(String name) {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz != null) return clazz;
+            try {
+                return findClass(name);
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+    }
+
+    public String getModuleId() {
+        return moduleId;
+    }
+
+    @Override
+    public String toString() {
+        return "ModuleClassLoader{" + moduleId + "}";
+    }
+}
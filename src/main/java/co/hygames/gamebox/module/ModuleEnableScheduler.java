@@ -0,0 +1,246 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import co.hygames.gamebox.module.data.DependencyData;
+import co.hygames.gamebox.module.local.LocalModule;
+import co.hygames.gamebox.utilities.ThreadUtility;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Enables modules concurrently while respecting their dependencies.
+ *
+ * A module is started as soon as all of its dependencies (hard and loaded soft ones) are done.
+ * Modules without a path between them in the dependency graph are enabled in parallel.
+ * If a hard dependency fails, all modules depending on it are skipped. Failing soft dependencies
+ * only delay their dependents until the failure is known.
+ *
+ * @author Niklas Eicker
+ */
+public class ModuleEnableScheduler {
+    private final int maxParallelism;
+
+    /**
+     * @param maxParallelism maximum number of modules that are enabled at the same time
+     */
+    public ModuleEnableScheduler(int maxParallelism) {
+        if (maxParallelism < 1) throw new IllegalArgumentException("Parallelism must be positive");
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Enable the given modules. The method blocks until all of them are enabled, failed or skipped.
+     *
+     * @param modules modules to enable
+     * @param enabler enables a single module and returns whether it succeeded. Called concurrently
+     * @return timeline of the enabled modules in the order they finished
+     */
+    public EnableTimeline enable(Collection<LocalModule> modules, Predicate<LocalModule> enabler) throws InterruptedException {
+        EnableTimeline timeline = new EnableTimeline();
+        Map<String, Node> nodes = buildGraph(modules);
+        List<Node> schedulable = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.inCycle) {
+                timeline.add(node.module.getId(), EnableStatus.SKIPPED, null, timeline.now(), 0);
+            } else {
+                schedulable.add(node);
+            }
+        }
+        if (schedulable.isEmpty()) return timeline;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(schedulable.size(), maxParallelism),
+                ThreadUtility.namedDaemonThreadFactory("module-enable"));
+        CountDownLatch done = new CountDownLatch(schedulable.size());
+        try {
+            for (Node node : schedulable) {
+                if (node.pendingDependencies.get() == 0) {
+                    submit(node, executor, enabler, timeline, done);
+                }
+            }
+            done.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        return timeline;
+    }
+
+    private Map<String, Node> buildGraph(Collection<LocalModule> modules) {
+        Map<String, Node> nodes = new LinkedHashMap<>();
+        for (LocalModule module : modules) {
+            nodes.put(module.getId(), new Node(module));
+        }
+        for (Node node : nodes.values()) {
+            for (DependencyData dependency : node.module.getVersionData().getDependencies()) {
+                Node dependencyNode = nodes.get(dependency.getId());
+                // dependencies outside of this set are either loaded already, or GameBox itself
+                if (dependencyNode == null || dependencyNode == node) continue;
+                dependencyNode.dependents.add(node);
+                if (!dependency.isSoftDependency()) dependencyNode.hardDependents.add(node);
+                node.pendingDependencies.incrementAndGet();
+            }
+        }
+        // nodes in a cycle (or depending on one) can never become ready; they are skipped
+        Deque<Node> ready = new ArrayDeque<>();
+        Map<Node, Integer> inDegree = new HashMap<>();
+        for (Node node : nodes.values()) {
+            inDegree.put(node, node.pendingDependencies.get());
+            if (node.pendingDependencies.get() == 0) ready.add(node);
+        }
+        Set<Node> reachable = new HashSet<>();
+        while (!ready.isEmpty()) {
+            Node node = ready.poll();
+            reachable.add(node);
+            for (Node dependent : node.dependents) {
+                if (inDegree.merge(dependent, -1, Integer::sum) == 0) ready.add(dependent);
+            }
+        }
+        for (Node node : nodes.values()) {
+            node.inCycle = !reachable.contains(node);
+        }
+        return nodes;
+    }
+
+    private void submit(Node node, ExecutorService executor, Predicate<LocalModule> enabler, EnableTimeline timeline, CountDownLatch done) {
+        executor.execute(() -> {
+            long start = timeline.now();
+            boolean success = false;
+            try {
+                success = enabler.test(node.module);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                timeline.add(node.module.getId(), success ? EnableStatus.ENABLED : EnableStatus.FAILED,
+                        Thread.currentThread().getName(), start, timeline.now() - start);
+                finish(node, !success, executor, enabler, timeline, done);
+            }
+        });
+    }
+
+    private void finish(Node node, boolean failed, ExecutorService executor, Predicate<LocalModule> enabler, EnableTimeline timeline, CountDownLatch done) {
+        for (Node dependent : node.dependents) {
+            if (failed && node.hardDependents.contains(dependent)) dependent.blocked = true;
+            if (dependent.pendingDependencies.decrementAndGet() != 0) continue;
+            if (dependent.blocked) {
+                timeline.add(dependent.module.getId(), EnableStatus.SKIPPED, null, timeline.now(), 0);
+                finish(dependent, true, executor, enabler, timeline, done);
+            } else {
+                submit(dependent, executor, enabler, timeline, done);
+            }
+        }
+        done.countDown();
+    }
+
+    private static class Node {
+        private final LocalModule module;
+        private final List<Node> dependents = new ArrayList<>();
+        private final Set<Node> hardDependents = new HashSet<>();
+        private final AtomicInteger pendingDependencies = new AtomicInteger();
+        private volatile boolean blocked = false;
+        private boolean inCycle = false;
+
+        private Node(LocalModule module) {
+            this.module = module;
+        }
+    }
+
+    public enum EnableStatus {
+        ENABLED,
+        FAILED,
+        // not attempted, because a hard dependency failed or the module is part of a dependency cycle
+        SKIPPED
+    }
+
+    /**
+     * Records when and on which thread each module was enabled
+     */
+    public static class EnableTimeline {
+        private final long startedAt = System.nanoTime();
+        private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+        private long now() {
+            return System.nanoTime() - startedAt;
+        }
+
+        private void add(String moduleId, EnableStatus status, String thread, long start, long duration) {
+            entries.add(new Entry(moduleId, status, thread, start, duration));
+        }
+
+        public List<Entry> getEntries() {
+            return Collections.unmodifiableList(entries);
+        }
+
+        public Entry getEntry(String moduleId) {
+            for (Entry entry : entries) {
+                if (entry.getModuleId().equals(moduleId)) return entry;
+            }
+            return null;
+        }
+
+        public static class Entry {
+            private final String moduleId;
+            private final EnableStatus status;
+            private final String thread;
+            private final long startNanos;
+            private final long durationNanos;
+
+            private Entry(String moduleId, EnableStatus status, String thread, long startNanos, long durationNanos) {
+                this.moduleId = moduleId;
+                this.status = status;
+                this.thread = thread;
+                this.startNanos = startNanos;
+                this.durationNanos = durationNanos;
+            }
+
+            public String getModuleId() {
+                return moduleId;
+            }
+
+            public EnableStatus getStatus() {
+                return status;
+            }
+
+            /**
+             * @return name of the thread that enabled the module, or null if it was skipped
+             */
+            public String getThread() {
+                return thread;
+            }
+
+            /**
+             * @return nanoseconds between the start of the scheduler and the start of this module
+             */
+            public long getStartNanos() {
+                return startNanos;
+            }
+
+            public long getDurationNanos() {
+                return durationNanos;
+            }
+
+            @Override
+            public String toString() {
+                return moduleId + " " + status + " at +" + TimeUnit.NANOSECONDS.toMillis(startNanos) + "ms in "
+                        + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms" + (thread == null ? "" : " on " + thread);
+            }
+        }
+    }
+}
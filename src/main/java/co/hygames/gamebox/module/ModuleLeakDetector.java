@@ -0,0 +1,106 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the class loaders of unloaded modules.
+ *
+ * A class loader can only be collected once nothing references the module anymore. Loaders that are still
+ * reachable a while after their module was unloaded point at a leak (e.g. a thread started by the module,
+ * or a listener registered somewhere else) that keeps the module classes in memory.
+ *
+ * @author Niklas Eicker
+ */
+public class ModuleLeakDetector {
+    private final ReferenceQueue<ClassLoader> collected = new ReferenceQueue<>();
+    private final Map<Reference<? extends ClassLoader>, UnloadedModule> unloadedModules = new ConcurrentHashMap<>();
+    private final long gracePeriodNanos;
+
+    /**
+     * @param gracePeriod time given to the garbage collector before a loader counts as leaked
+     * @param unit unit of the grace period
+     */
+    public ModuleLeakDetector(long gracePeriod, TimeUnit unit) {
+        this.gracePeriodNanos = unit.toNanos(gracePeriod);
+    }
+
+    /**
+     * Start watching the class loader of an unloaded module
+     *
+     * @param moduleId id of the unloaded module
+     * @param classLoader the class loader of the module. It should already be closed
+     */
+    public void track(String moduleId, ClassLoader classLoader) {
+        expungeCollected();
+        unloadedModules.put(new WeakReference<>(classLoader, collected), new UnloadedModule(moduleId, System.nanoTime()));
+    }
+
+    /**
+     * Collect all modules whose class loaders are still reachable after the grace period.
+     * Reported modules are not tracked any further.
+     *
+     * @return IDs of leaked modules
+     */
+    public List<String> pollLeakedModules() {
+        expungeCollected();
+        long now = System.nanoTime();
+        List<String> leaked = new ArrayList<>();
+        Iterator<Map.Entry<Reference<? extends ClassLoader>, UnloadedModule>> iterator = unloadedModules.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Reference<? extends ClassLoader>, UnloadedModule> entry = iterator.next();
+            if (entry.getKey().get() != null && now - entry.getValue().unloadedAt > gracePeriodNanos) {
+                leaked.add(entry.getValue().moduleId);
+                iterator.remove();
+            }
+        }
+        return leaked;
+    }
+
+    /**
+     * @return number of unloaded modules whose class loaders were not collected yet
+     */
+    public int getPendingCount() {
+        expungeCollected();
+        return unloadedModules.size();
+    }
+
+    private void expungeCollected() {
+        Reference<? extends ClassLoader> reference;
+        while ((reference = collected.poll()) != null) {
+            unloadedModules.remove(reference);
+        }
+    }
+
+    private static class UnloadedModule {
+        private final String moduleId;
+        private final long unloadedAt;
+
+        private UnloadedModule(String moduleId, long unloadedAt) {
+            this.moduleId = moduleId;
+            this.unloadedAt = unloadedAt;
+        }
+    }
+}
@@ -21,17 +21,25 @@ package co.hygames.gamebox.module;
 import co.hygames.gamebox.GameBox;
 import co.hygames.gamebox.database.Callback;
 import co.hygames.gamebox.exceptions.module.InvalidModuleException;
+import co.hygames.gamebox.exceptions.module.ModuleDependencyCycleException;
 import co.hygames.gamebox.exceptions.module.ModuleVersionException;
 import co.hygames.gamebox.module.cloud.CloudFacade;
 import co.hygames.gamebox.module.cloud.CloudManager;
+import co.hygames.gamebox.module.cloud.CloudTransport;
+import co.hygames.gamebox.module.cloud.FileCloudTransport;
+import co.hygames.gamebox.module.cloud.HttpCloudTransport;
 import co.hygames.gamebox.exceptions.module.GameBoxCloudException;
 import co.hygames.gamebox.module.data.CloudModuleData;
+import co.hygames.gamebox.module.data.DependencyData;
 import co.hygames.gamebox.module.data.ModuleBasicData;
 import co.hygames.gamebox.module.data.VersionData;
 import co.hygames.gamebox.module.local.LocalModule;
+import co.hygames.gamebox.module.local.LocalModuleIndex;
+import co.hygames.gamebox.module.local.ModuleStore;
 import co.hygames.gamebox.module.settings.ModulesSettings;
 import co.hygames.gamebox.utilities.FileUtility;
 import co.hygames.gamebox.utilities.ModuleUtility;
+import co.hygames.gamebox.utilities.ThreadUtility;
 import co.hygames.gamebox.utilities.versioning.SemanticVersion;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
@@ -39,49 +47,115 @@ import org.yaml.snakeyaml.representer.Representer;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Niklas Eicker
  */
 public class ModulesManager {
+    /**
+     * Number of versions per module that are kept in the module store besides the active ones
+     */
+    private static final int STORED_VERSIONS_PER_MODULE = 2;
+    /**
+     * Directory inside the modules directory that holds downloads until their installation is applied
+     */
+    private static final String STAGING_DIRECTORY_NAME = "staging";
+
     private GameBox gameBox;
     private CloudManager cloudManager;
+    private CompletableFuture<Void> cloudReady;
+    private final StartupTrace startupTrace = new StartupTrace();
     private File modulesDir;
+    private File stagingDir;
     private File modulesFile;
+    private ModuleStore moduleStore;
     private ModulesSettings modulesSettings;
     private Map<String, LocalModule> localModules = new HashMap<>();
-    private Map<String, GameBoxModule> loadedModules = new HashMap<>();
-    private Set<String> hasUpdateAvailable = new HashSet<>();
+    private Map<String, GameBoxModule> loadedModules = new ConcurrentHashMap<>();
+    private Map<String, ModuleClassLoader> moduleClassLoaders = new ConcurrentHashMap<>();
+    private ModuleEnableScheduler.EnableTimeline enableTimeline;
+    private ModuleLeakDetector leakDetector = new ModuleLeakDetector(1, TimeUnit.MINUTES);
+    private Set<String> hasUpdateAvailable = ConcurrentHashMap.newKeySet();
 
     public ModulesManager(GameBox gameBox) {
         this.gameBox = gameBox;
+        traced("prepare files", this::prepareFiles);
+        traced("load module settings", this::loadModuleSettings);
         connectToCloud();
-        prepareFiles();
-        loadModuleSettings();
-        collectLocalModules();
-        checkDependencies();
+        traced("collect local modules", this::collectLocalModules);
+        traced("check dependencies", this::checkDependencies);
         //collectLocalModuleUpdates();
-        loadLocalModules();
+        traced("load local modules", this::loadLocalModules);
+        gameBox.getLogger().fine("Startup trace:");
+        for (StartupTrace.Entry entry : startupTrace.getEntries()) {
+            gameBox.getLogger().fine("    " + entry);
+        }
+    }
+
+    private void traced(String phase, Runnable step) {
+        long start = startupTrace.begin();
+        step.run();
+        startupTrace.end(phase, start);
     }
 
     private void checkDependencies() {
         ModuleUtility.DependencyReport report = ModuleUtility.checkDependencies(this.localModules);
         if (!report.isOk()) {
             report.getLog().forEach(s -> gameBox.getLogger().severe(s));
+            gameBox.getLogger().severe("Skipping the modules " + String.join(", ", report.getRemovedModules()));
+            report.getRemovedModules().forEach(localModules::remove);
             // ToDo: info about version range? Link to docs
         }
     }
 
     private void loadLocalModules() {
-        Map<String, LocalModule> modulesToLoad = localModules;
-        List<LocalModule> sortedModules = ModuleUtility.sortModulesByDependencies(modulesToLoad.values());
-        for (LocalModule localModule : sortedModules) {
-            gameBox.getLogger().fine("Loading module '" + localModule.getName() + "'...");
+        List<LocalModule> modulesToLoad = new ArrayList<>();
+        for (LocalModule localModule : sortLocalModules()) {
             if (loadedModules.containsKey(localModule.getId())) {
-                gameBox.getLogger().fine("    already loaded! Skipping...");
+                gameBox.getLogger().fine("Module '" + localModule.getName() + "' is already loaded! Skipping...");
                 continue;
             }
-            loadModule(localModule);
+            modulesToLoad.add(localModule);
+        }
+        try {
+            enableTimeline = new ModuleEnableScheduler(ThreadUtility.boundedParallelism(modulesToLoad.size()))
+                    .enable(modulesToLoad, this::loadModule);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            gameBox.getLogger().severe("Interrupted while loading local modules");
+            return;
+        }
+        gameBox.getLogger().fine("Module enable timeline:");
+        for (ModuleEnableScheduler.EnableTimeline.Entry entry : enableTimeline.getEntries()) {
+            gameBox.getLogger().fine("    " + entry);
+        }
+    }
+
+    /**
+     * Sort the local modules by their dependencies. Modules in dependency cycles and their hard dependents are
+     * reported and removed from the local modules.
+     */
+    private List<LocalModule> sortLocalModules() {
+        while (true) {
+            List<LocalModule> modules = new ArrayList<>(localModules.values());
+            modules.sort(Comparator.comparing(LocalModule::getId));
+            try {
+                return ModuleUtility.sortModulesByDependencies(modules);
+            } catch (ModuleDependencyCycleException e) {
+                gameBox.getLogger().severe(e.getMessage());
+                gameBox.getLogger().severe("   Skipping the modules " + String.join(", ", e.getCycle().subList(1, e.getCycle().size())));
+                e.getCycle().forEach(localModules::remove);
+                // modules that hard depend on a module of the cycle cannot be loaded either
+                checkDependencies();
+            }
         }
     }
 
@@ -93,20 +167,54 @@ public class ModulesManager {
         Yaml yaml = new Yaml(constructor, representer);
         try {
             this.modulesSettings = yaml.loadAs(new FileInputStream(modulesFile), ModulesSettings.class);
-            // prevent NPE for empty modules file
-            modulesSettings.setModules(modulesSettings.getModules() == null ? new HashMap<>() : modulesSettings.getModules());
         } catch (FileNotFoundException e) {
+            gameBox.getLogger().warning("Failed to read 'modules.yml'. Using the default settings...");
             e.printStackTrace();
         }
+        // prevent NPE for missing or empty modules file
+        if (modulesSettings == null) modulesSettings = new ModulesSettings();
+        modulesSettings.setModules(modulesSettings.getModules() == null ? new HashMap<>() : modulesSettings.getModules());
+        if (modulesSettings.getCloud() == null) modulesSettings.setCloud(new ModulesSettings.CloudSettings());
     }
 
+    /**
+     * Load the cached module catalog and refresh it in the background, while the local modules are loaded.
+     * A slow or unreachable cloud does not stall the start; cloud operations wait for the catalog instead.
+     */
     private void connectToCloud() {
-        this.cloudManager = new CloudManager(gameBox, new CloudFacade());
+        this.cloudManager = new CloudManager(gameBox, new CloudFacade(createCloudTransport()), modulesDir);
+        long start = startupTrace.begin();
+        cloudReady = cloudManager.loadCloudContentAsync().handle((result, exception) -> {
+            startupTrace.end("load cloud catalog", start);
+            gameBox.getLogger().fine("    " + startupTrace.getEntry("load cloud catalog"));
+            if (exception != null) {
+                gameBox.getLogger().severe("Error while attempting to load cloud content");
+                exception.getCause().printStackTrace();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Servers without internet access can provide a copy of the cloud in the directory 'modules/mirror'.
+     * Otherwise the API is reached over HTTP(S) as configured in the 'cloud' section of 'modules.yml'.
+     */
+    private CloudTransport createCloudTransport() {
+        File mirror = new File(modulesDir, "mirror");
+        if (mirror.isDirectory()) {
+            gameBox.getLogger().info("Using the local cloud mirror in '" + mirror.getPath() + "'");
+            return new FileCloudTransport(mirror);
+        }
+        ModulesSettings.CloudSettings cloud = modulesSettings.getCloud();
+        if (cloud.getConnectTimeoutMillis() < 0 || cloud.getReadTimeoutMillis() < 0) {
+            gameBox.getLogger().warning("The cloud timeouts in 'modules.yml' cannot be negative. Using the defaults...");
+            return new HttpCloudTransport(cloud.getBaseUrl());
+        }
         try {
-            cloudManager.updateCloudContent();
-        } catch (GameBoxCloudException e) {
-            gameBox.getLogger().severe("Error while attempting to load cloud content");
-            e.printStackTrace();
+            return new HttpCloudTransport(cloud.getBaseUrl(), cloud.getConnectTimeoutMillis(), cloud.getReadTimeoutMillis());
+        } catch (IllegalArgumentException e) {
+            gameBox.getLogger().warning(e.getMessage() + " in 'modules.yml'. Using the default API...");
+            return new HttpCloudTransport(ModulesSettings.CloudSettings.DEFAULT_BASE_URL, cloud.getConnectTimeoutMillis(), cloud.getReadTimeoutMillis());
         }
     }
 
@@ -115,6 +223,12 @@ public class ModulesManager {
         if (modulesDir.mkdirs()) {
             gameBox.getLogger().info("Created Modules Directory");
         }
+        moduleStore = new ModuleStore(modulesDir);
+        stagingDir = new File(modulesDir, STAGING_DIRECTORY_NAME);
+        // jars staged by an interrupted installation are never applied; part files are kept to resume downloads
+        for (File staged : FileUtility.getAllJars(stagingDir)) {
+            staged.delete();
+        }
         modulesFile = new File(modulesDir, "modules.yml");
         if (!modulesFile.isFile()) {
             try {
@@ -127,18 +241,297 @@ public class ModulesManager {
         }
     }
 
+    /**
+     * Read all module jars in the modules directory.
+     *
+     * The jars are opened, parsed and validated in parallel. Every jar is handled in isolation, so a broken
+     * module only skips itself. Results are collected in the order of the jar names, which keeps the
+     * outcome independent of thread scheduling (e.g. which jar wins for duplicate module IDs).
+     * Jars that did not change since the last start are restored from the {@link LocalModuleIndex}.
+     */
     private void collectLocalModules() {
         // ToDo: check the module settings! Ignore disabled modules
-        List<File> jars = FileUtility.getAllJars(modulesDir);
+        List<File> jars = new ArrayList<>(FileUtility.getAllJars(modulesDir));
+        jars.sort(Comparator.comparing(File::getName));
+        LocalModuleIndex moduleIndex = new LocalModuleIndex(new File(modulesDir, LocalModuleIndex.FILE_NAME));
+        try {
+            moduleIndex.load();
+        } catch (IOException e) {
+            gameBox.getLogger().warning("Failed to read the module index. All module jars will be read again.");
+        }
+        if (!jars.isEmpty() && !discoverLocalModules(jars, moduleIndex)) return;
+        // the stored jars are indexed as well, to know their module versions without opening them
+        List<File> indexedJars = new ArrayList<>(jars);
+        indexedJars.addAll(cleanModuleStore(jars, moduleIndex));
+        moduleIndex.retain(indexedJars);
+        try {
+            moduleIndex.save();
+        } catch (IOException e) {
+            gameBox.getLogger().warning("Failed to save the module index:");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return false if the discovery was interrupted
+     */
+    private boolean discoverLocalModules(List<File> jars, LocalModuleIndex moduleIndex) {
+        ExecutorService discoveryExecutor = Executors.newFixedThreadPool(ThreadUtility.boundedParallelism(jars.size()),
+                ThreadUtility.namedDaemonThreadFactory("module-discovery"));
+        try {
+            List<Future<LocalModule>> discoveredModules = new ArrayList<>(jars.size());
+            for (File jar : jars) {
+                discoveredModules.add(discoveryExecutor.submit(() -> moduleIndex.getOrRead(jar)));
+            }
+            for (int i = 0; i < jars.size(); i++) {
+                File jar = jars.get(i);
+                try {
+                    LocalModule localModule = discoveredModules.get(i).get();
+                    LocalModule duplicate = localModules.putIfAbsent(localModule.getId(), localModule);
+                    if (duplicate != null) {
+                        gameBox.getLogger().severe("The jars '" + duplicate.getModuleJar().getName() + "' and '"
+                                + jar.getName() + "' both contain the module '" + localModule.getId() + "'");
+                        gameBox.getLogger().severe("Skipping '" + jar.getName() + "'...");
+                    }
+                } catch (ExecutionException e) {
+                    gameBox.getLogger().severe("Error while loading module from the jar '" + jar.getName() + "'");
+                    e.getCause().printStackTrace();
+                    gameBox.getLogger().severe("Skipping...");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    gameBox.getLogger().severe("Interrupted while collecting local modules");
+                    return false;
+                }
+            }
+        } finally {
+            discoveryExecutor.shutdownNow();
+        }
+        return true;
+    }
+
+    /**
+     * Add all active jars to the module store and remove stored jars that are no longer needed.
+     *
+     * Besides the active jars, the newest {@value #STORED_VERSIONS_PER_MODULE} other versions of every module are kept,
+     * so that switching back to one of them does not need a download.
+     *
+     * @return the jars that remain in the store
+     */
+    private List<File> cleanModuleStore(List<File> jars, LocalModuleIndex moduleIndex) {
+        for (File corrupt : moduleStore.verify(true)) {
+            gameBox.getLogger().warning("Removed the corrupt jar '" + corrupt.getName() + "' from the module store");
+        }
+        Set<String> referenced = new HashSet<>();
         for (File jar : jars) {
             try {
-                LocalModule localModule = LocalModule.fromJar(jar);
-                localModules.put(localModule.getId(), localModule);
-            } catch (InvalidModuleException e) {
-                gameBox.getLogger().severe("Error while loading module from the jar '" + jar.getName() + "'");
+                String hash = moduleIndex.getHash(jar);
+                if (hash == null) hash = FileUtility.sha256(jar);
+                moduleStore.adopt(jar, hash);
+                referenced.add(hash);
+            } catch (IOException e) {
+                gameBox.getLogger().warning("Failed to add '" + jar.getName() + "' to the module store");
                 e.printStackTrace();
-                gameBox.getLogger().severe("Skipping...");
+                // without a hash the store cannot be cleaned safely
+                return moduleStore.getStoredJars();
+            }
+        }
+        for (File removed : moduleStore.collectGarbage(referenced, moduleIndex, STORED_VERSIONS_PER_MODULE)) {
+            gameBox.getLogger().fine("Removed the unused jar '" + removed.getName() + "' from the module store");
+        }
+        return moduleStore.getStoredJars();
+    }
+
+    /**
+     * Update all local modules that have a newer version in the cloud.
+     *
+     * The pipeline picks a consistent set of new versions, downloads all of them in parallel and only then applies
+     * the whole set at once: the affected modules are unloaded, the old jars removed and everything is loaded again in
+     * one dependency ordered pass, followed by a single write of the module settings.
+     * If any download fails, nothing is applied.
+     * The update waits for the module catalog to be loaded.
+     *
+     * @return future that completes with the ids of the updated modules
+     */
+    public CompletableFuture<List<String>> updateAllModules() {
+        return cloudReady.thenCompose(ready -> resolveAndInstallUpdates());
+    }
+
+    private CompletableFuture<List<String>> resolveAndInstallUpdates() {
+        collectLocalModuleUpdates();
+        Map<String, VersionData> plan;
+        try {
+            plan = createVersionSolver().solve(hasUpdateAvailable);
+        } catch (ModuleVersionException e) {
+            gameBox.getLogger().severe("Failed to resolve the module updates: " + e.getMessage());
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        Set<String> skipped = new TreeSet<>(hasUpdateAvailable);
+        skipped.removeAll(plan.keySet());
+        if (!skipped.isEmpty()) {
+            gameBox.getLogger().warning("No compatible update found for " + String.join(", ", skipped));
+        }
+        return installPlan(plan);
+    }
+
+    /**
+     * Download all modules of a resolved plan in parallel and apply them together.
+     *
+     * The jars are downloaded into the staging directory and only moved into the modules directory once all
+     * downloads succeeded. If one fails, the staged jars are deleted again.
+     */
+    private CompletableFuture<List<String>> installPlan(Map<String, VersionData> plan) {
+        if (plan.isEmpty()) return CompletableFuture.completedFuture(Collections.emptyList());
+        if (!stagingDir.isDirectory() && !stagingDir.mkdirs()) {
+            gameBox.getLogger().severe("Failed to create the directory " + stagingDir);
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        gameBox.getLogger().info("Downloading " + plan.size() + " modules...");
+        List<CompletableFuture<LocalModule>> downloads = new ArrayList<>();
+        for (Map.Entry<String, VersionData> module : plan.entrySet()) {
+            try {
+                downloads.add(download(cloudManager.getModuleData(module.getKey()), module.getValue().getVersion(), stagingDir));
+            } catch (GameBoxCloudException e) {
+                CompletableFuture<LocalModule> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                downloads.add(failed);
+            }
+        }
+        return CompletableFuture.allOf(downloads.toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    List<LocalModule> updatedModules = new ArrayList<>();
+                    downloads.forEach(download -> updatedModules.add(download.join()));
+                    return updatedModules;
+                })
+                .whenComplete((updatedModules, exception) -> {
+                    if (exception == null) return;
+                    for (CompletableFuture<LocalModule> download : downloads) {
+                        if (download.isDone() && !download.isCompletedExceptionally()) discardStagedJar(download.join());
+                    }
+                    gameBox.getLogger().severe("Failed to download the modules. No module was changed.");
+                    exception.printStackTrace();
+                })
+                .thenApply(this::applyModules);
+    }
+
+    private void discardStagedJar(LocalModule module) {
+        File jar = module.getModuleJar();
+        if (stagingDir.equals(jar.getParentFile())) jar.delete();
+    }
+
+    private CompletableFuture<LocalModule> download(CloudModuleData cloudModule, SemanticVersion version, File directory) {
+        CompletableFuture<LocalModule> future = new CompletableFuture<>();
+        cloudManager.downloadModule(cloudModule, version, directory, new Callback<ModuleBasicData>() {
+            @Override
+            public void success(ModuleBasicData result) {
+                future.complete((LocalModule) result);
+            }
+
+            @Override
+            public void fail(ModuleBasicData defaultResult, Exception exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+        return future;
+    }
+
+    private VersionSolver createVersionSolver() {
+        Map<String, VersionData> installed = new HashMap<>();
+        localModules.forEach((id, module) -> installed.put(id, module.getVersionData()));
+        installed.put(GameBox.versionInfo.getId(), GameBox.versionInfo.getVersionData());
+        return new VersionSolver(cloudManager.getCloudContent(), installed);
+    }
+
+    /**
+     * Add or replace local modules with downloaded ones and reload everything affected in one pass
+     */
+    private synchronized List<String> applyModules(List<LocalModule> updatedModules) {
+        Set<String> updatedIds = new TreeSet<>();
+        updatedModules.forEach(module -> updatedIds.add(module.getId()));
+        try {
+            activateStagedJars(updatedModules);
+        } catch (UncheckedIOException e) {
+            updatedModules.forEach(this::discardStagedJar);
+            gameBox.getLogger().severe("Failed to install the modules " + String.join(", ", updatedIds) + ". No module was changed.");
+            e.printStackTrace();
+            throw e;
+        }
+        // everything that (transitively) depends on an updated module has to be reloaded with it
+        Set<String> affected = new HashSet<>(updatedIds);
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (LocalModule module : localModules.values()) {
+                if (affected.contains(module.getId())) continue;
+                for (DependencyData dependency : module.getVersionData().getDependencies()) {
+                    if (affected.contains(dependency.getId())) {
+                        grown = affected.add(module.getId());
+                        break;
+                    }
+                }
+            }
+        }
+        try {
+            List<LocalModule> toUnload = new ArrayList<>(sortLocalModules());
+            Collections.reverse(toUnload);
+            for (LocalModule module : toUnload) {
+                if (affected.contains(module.getId()) && loadedModules.containsKey(module.getId())) unloadModule(module);
+            }
+            for (LocalModule updated : updatedModules) {
+                LocalModule old = localModules.put(updated.getId(), updated);
+                if (old != null && old.getModuleJar() != null && !old.getModuleJar().equals(updated.getModuleJar())) {
+                    // the jar is only a link into the module store
+                    if (!old.getModuleJar().delete()) {
+                        gameBox.getLogger().warning("Failed to delete the old jar '" + old.getModuleJar().getName() + "'");
+                    }
+                }
+            }
+            addModulesToSettings(updatedIds);
+            checkDependencies();
+            loadLocalModules();
+        } catch (RuntimeException e) {
+            Set<String> notLoaded = new TreeSet<>(affected);
+            notLoaded.removeAll(loadedModules.keySet());
+            gameBox.getLogger().severe("Failed to apply the modules " + String.join(", ", updatedIds)
+                    + ". Their new jars are in the modules directory"
+                    + (notLoaded.isEmpty() ? "." : ", but the modules " + String.join(", ", notLoaded) + " are not loaded."));
+            e.printStackTrace();
+            throw e;
+        }
+        List<String> updated = new ArrayList<>(updatedIds);
+        hasUpdateAvailable.removeAll(updatedIds);
+        gameBox.getLogger().info("Installed the modules " + String.join(", ", updated));
+        return updated;
+    }
+
+    /**
+     * Move staged jars into the modules directory. If one cannot be moved, the moved ones are staged again.
+     */
+    private void activateStagedJars(List<LocalModule> stagedModules) {
+        List<File> activeJars = new ArrayList<>();
+        for (LocalModule staged : stagedModules) {
+            File stagedJar = staged.getModuleJar();
+            File activeJar = stagedJar;
+            if (stagingDir.equals(stagedJar.getParentFile())) {
+                activeJar = new File(modulesDir, stagedJar.getName());
+                try {
+                    FileUtility.moveAtomically(stagedJar, activeJar);
+                } catch (IOException e) {
+                    for (int i = 0; i < activeJars.size(); i++) {
+                        File moved = activeJars.get(i);
+                        if (moved.equals(stagedModules.get(i).getModuleJar())) continue;
+                        try {
+                            FileUtility.moveAtomically(moved, stagedModules.get(i).getModuleJar());
+                        } catch (IOException ignored) {
+                            moved.delete();
+                        }
+                    }
+                    throw new UncheckedIOException("Failed to move '" + stagedJar.getName() + "' into the modules directory", e);
+                }
             }
+            activeJars.add(activeJar);
+        }
+        for (int i = 0; i < stagedModules.size(); i++) {
+            stagedModules.get(i).setModuleJar(activeJars.get(i));
         }
     }
 
@@ -161,27 +554,52 @@ public class ModulesManager {
         return this.modulesDir;
     }
 
-    public void installModule(String moduleId) {
+    public ModuleStore getModuleStore() {
+        return this.moduleStore;
+    }
+
+    /**
+     * Install the newest version of a module that fits the installed modules, together with all of its missing
+     * hard dependencies. The installation waits for the module catalog to be loaded.
+     *
+     * @param moduleId the module to install
+     * @return future that completes with the ids of all installed modules
+     */
+    public CompletableFuture<List<String>> installModule(String moduleId) {
+        return cloudReady.thenCompose(ready -> resolveAndInstall(moduleId));
+    }
+
+    private CompletableFuture<List<String>> resolveAndInstall(String moduleId) {
         gameBox.getLogger().fine("Install module '" + moduleId +"'...");
+        Map<String, VersionData> plan;
         try {
-            CloudModuleData cloudModule = cloudManager.getModuleData(moduleId);
-            if (localModules.containsKey(moduleId) && localModules.get(moduleId).getVersionData().getVersion().equals(cloudModule.getLatestVersion())) {
-                // module already installed!
-                gameBox.getLogger().fine("Attempted to install already installed module '" + moduleId +"' @" + cloudModule.getLatestVersion());
-                return;
-            }
-            installModule(cloudModule, cloudModule.getLatestVersion());
-        } catch (ModuleVersionException | GameBoxCloudException e) {
-            e.printStackTrace();
+            plan = createVersionSolver().solve(Collections.singleton(moduleId));
+        } catch (ModuleVersionException e) {
+            gameBox.getLogger().severe("Cannot install the module '" + moduleId + "': " + e.getMessage());
+            return CompletableFuture.completedFuture(Collections.emptyList());
         }
+        if (plan.isEmpty()) {
+            // module already installed!
+            gameBox.getLogger().fine("Attempted to install already installed module '" + moduleId + "'");
+        }
+        return installPlan(plan);
     }
 
-    public void installModule(String moduleId, SemanticVersion version) throws ModuleVersionException {
-        try {
-            installModule(cloudManager.getModuleData(moduleId), version);
-        } catch (GameBoxCloudException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Install a specific version of a module, once the module catalog is loaded
+     *
+     * @param moduleId the module to install
+     * @param version  the version to install
+     * @return future that completes once the download started, or fails if the module or version is unknown
+     */
+    public CompletableFuture<Void> installModule(String moduleId, SemanticVersion version) {
+        return cloudReady.thenRun(() -> {
+            try {
+                installModule(cloudManager.getModuleData(moduleId), version);
+            } catch (GameBoxCloudException | ModuleVersionException e) {
+                throw new CompletionException(e);
+            }
+        });
     }
 
     public void installModule(CloudModuleData cloudModule, SemanticVersion version) throws ModuleVersionException {
@@ -217,17 +635,27 @@ public class ModulesManager {
         });
     }
 
-    private void loadModule(LocalModule localModule) {
+    /**
+     * Load and enable a single module. This method is called concurrently for independent modules.
+     *
+     * @param localModule the module to load
+     * @return whether the module was enabled successfully
+     */
+    private boolean loadModule(LocalModule localModule) {
+        gameBox.getLogger().fine("Loading module '" + localModule.getName() + "'...");
+        reportLeakedModules();
         GameBoxModule instance;
         try {
-            gameBox.getLogger().info("    instantiating");
-            instance = (GameBoxModule) FileUtility.getClassesFromJar(localModule.getModuleJar(), GameBoxModule.class).get(0).newInstance();
-            gameBox.getLogger().info("    done.");
-        } catch (InstantiationException | IllegalAccessException e) {
+            gameBox.getLogger().info("    instantiating '" + localModule.getName() + "'");
+            ModuleClassLoader classLoader = createClassLoader(localModule);
+            moduleClassLoaders.put(localModule.getId(), classLoader);
+            instance = classLoader.loadModuleClass(localModule.getEntryPoint()).newInstance();
+            gameBox.getLogger().info("    done with '" + localModule.getName() + "'.");
+        } catch (IOException | ClassNotFoundException | InstantiationException | IllegalAccessException | LinkageError e) {
             gameBox.getLogger().warning("Failed to instantiate module '" + localModule.getName() + "' from the jar '" + localModule.getModuleJar().getName() + "'");
             e.printStackTrace();
             unloadModule(localModule);
-            return;
+            return false;
         }
         instance.setGameBox(gameBox);
         instance.setModuleData(localModule);
@@ -240,8 +668,19 @@ public class ModulesManager {
             gameBox.getLogger().severe("Exception while enabling " + localModule.getName() + " @" + localModule.getVersionData().getVersion().toString() + ":");
             e.printStackTrace();
             unloadModule(localModule);
-            return;
+            return false;
+        }
+        return true;
+    }
+
+    private ModuleClassLoader createClassLoader(LocalModule localModule) throws IOException {
+        List<ModuleClassLoader> dependencies = new ArrayList<>();
+        for (DependencyData dependency : localModule.getVersionData().getDependencies()) {
+            // soft dependencies and GameBox itself have no class loader here
+            ModuleClassLoader dependencyLoader = moduleClassLoaders.get(dependency.getId());
+            if (dependencyLoader != null) dependencies.add(dependencyLoader);
         }
+        return new ModuleClassLoader(localModule, GameBoxModule.class.getClassLoader(), dependencies);
     }
 
     private void unloadModule(LocalModule localModule) {
@@ -257,11 +696,37 @@ public class ModulesManager {
                 loadedModules.remove(localModule.getId());
             }
         }
+        ModuleClassLoader classLoader = moduleClassLoaders.remove(localModule.getId());
+        if (classLoader != null) {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                gameBox.getLogger().warning("Failed to close the class loader of " + localModule.getName());
+                e.printStackTrace();
+            }
+            leakDetector.track(localModule.getId(), classLoader);
+        }
+    }
+
+    /**
+     * Warn about unloaded modules whose classes are still in memory
+     */
+    public void reportLeakedModules() {
+        for (String moduleId : leakDetector.pollLeakedModules()) {
+            gameBox.getLogger().warning("The module '" + moduleId + "' was unloaded, but its classes are still referenced.");
+            gameBox.getLogger().warning("   Its class loader cannot be garbage collected. Please report this to the module author.");
+        }
     }
 
     private void addModuleToSettings(String moduleId) {
+        addModulesToSettings(Collections.singleton(moduleId));
+    }
+
+    private void addModulesToSettings(Collection<String> moduleIds) {
         Map<String, ModulesSettings.ModuleSettings> currentSettings = modulesSettings.getModules();
-        currentSettings.putIfAbsent(moduleId, new ModulesSettings.ModuleSettings());
+        for (String moduleId : moduleIds) {
+            currentSettings.putIfAbsent(moduleId, new ModulesSettings.ModuleSettings());
+        }
         modulesSettings.setModules(currentSettings);
         dumpModuleSettings();
     }
@@ -283,8 +748,8 @@ public class ModulesManager {
     private void dumpModuleSettings() {
         Constructor constructor = new Constructor(ModulesSettings.class);
         Yaml yaml = new Yaml(constructor);
-        try {
-            yaml.dump(modulesSettings, new FileWriter(modulesFile));
+        try (Writer writer = new FileWriter(modulesFile)) {
+            yaml.dump(modulesSettings, writer);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -298,4 +763,22 @@ public class ModulesManager {
     public GameBoxModule getModuleInstance(String moduleID) {
         return loadedModules.get(moduleID);
     }
+
+    /**
+     * @return future that completes once the module catalog was loaded, whether the cloud could be reached or not
+     */
+    public CompletableFuture<Void> whenCloudReady() {
+        return cloudReady;
+    }
+
+    public StartupTrace getStartupTrace() {
+        return startupTrace;
+    }
+
+    /**
+     * @return when and on which thread the local modules were enabled during startup
+     */
+    public ModuleEnableScheduler.EnableTimeline getEnableTimeline() {
+        return enableTimeline;
+    }
 }
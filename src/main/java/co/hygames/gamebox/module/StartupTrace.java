@@ -0,0 +1,109 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the phases of the start of the modules manager, including the phases that run on other threads,
+ * so that it can be seen which of them overlapped.
+ *
+ * @author Niklas Eicker
+ */
+public class StartupTrace {
+    private final long startedAt = System.nanoTime();
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return start time of a phase in nanoseconds since the start of the trace
+     */
+    public long begin() {
+        return System.nanoTime() - startedAt;
+    }
+
+    /**
+     * Record a phase as finished by the current thread
+     *
+     * @param phase name of the phase
+     * @param start the value returned by {@link #begin()} when the phase started
+     */
+    public void end(String phase, long start) {
+        entries.add(new Entry(phase, Thread.currentThread().getName(), start, begin() - start));
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public Entry getEntry(String phase) {
+        for (Entry entry : entries) {
+            if (entry.getPhase().equals(phase)) return entry;
+        }
+        return null;
+    }
+
+    public static class Entry {
+        private final String phase;
+        private final String thread;
+        private final long startNanos;
+        private final long durationNanos;
+
+        private Entry(String phase, String thread, long startNanos, long durationNanos) {
+            this.phase = phase;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        /**
+         * @return name of the thread that finished the phase
+         */
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * @return nanoseconds between the start of the trace and the start of this phase
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public boolean overlaps(Entry other) {
+            return startNanos < other.startNanos + other.durationNanos && other.startNanos < startNanos + durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return phase + " at +" + TimeUnit.NANOSECONDS.toMillis(startNanos) + "ms in "
+                    + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms on " + thread;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import co.hygames.gamebox.exceptions.module.ModuleVersionException;
+import co.hygames.gamebox.module.data.CloudModuleData;
+import co.hygames.gamebox.module.data.DependencyData;
+import co.hygames.gamebox.module.data.VersionData;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
+import co.hygames.gamebox.utilities.versioning.VersionConstraint;
+
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * Backtracking resolver that picks module versions from the cloud catalog.
+ *
+ * Installed modules keep their version, unless they are requested. For every requested module and every hard
+ * dependency that is not installed, a version is picked newest first, such that
+ * <ul>
+ *     <li>it meets the constraints of all modules that already have a version and depend on it</li>
+ *     <li>its own dependencies are met by the modules that already have a version</li>
+ * </ul>
+ * If no version of a module fits, the solver backtracks to the previous pick. Partial solutions that failed are
+ * remembered, so they are never explored twice.
+ *
+ * @author Niklas Eicker
+ */
+public class VersionSolver {
+    private static final int MAX_STEPS = 100_000;
+
+    private final Map<String, CloudModuleData> catalog;
+    private final Map<String, VersionData> installed;
+    private final Map<String, List<VersionData>> candidates = new HashMap<>();
+    private final Set<String> failedStates = new HashSet<>();
+    private final Map<String, VersionData> assignment = new HashMap<>();
+    private final TreeMap<String, VersionData> decided = new TreeMap<>();
+    private Set<String> requested;
+    private String conflict;
+    private int steps;
+
+    /**
+     * @param catalog   cloud modules by their id
+     * @param installed version data of all installed modules by their id, including GameBox itself
+     */
+    public VersionSolver(Map<String, CloudModuleData> catalog, Map<String, VersionData> installed) {
+        this.catalog = catalog;
+        this.installed = installed;
+    }
+
+    /**
+     * Pick versions for the requested modules and their missing hard dependencies.
+     * A requested module that is installed is allowed to keep its version, if no newer version fits.
+     *
+     * @param requestedModules ids of the modules to install or update
+     * @return the picked versions of all modules that have to be downloaded, i.e. that are not installed in that version
+     * @throws ModuleVersionException if there is no consistent set of versions
+     */
+    public Map<String, VersionData> solve(Collection<String> requestedModules) throws ModuleVersionException {
+        requested = new HashSet<>(requestedModules);
+        assignment.clear();
+        decided.clear();
+        failedStates.clear();
+        conflict = null;
+        steps = 0;
+        installed.forEach((id, versionData) -> {
+            if (!requested.contains(id)) assignment.put(id, versionData);
+        });
+        if (!search(new TreeSet<>(requested))) {
+            throw new ModuleVersionException(steps > MAX_STEPS ? "Gave up resolving the versions of " + String.join(", ", requested)
+                    : conflict != null ? conflict : "No consistent versions found for " + String.join(", ", requested));
+        }
+        Map<String, VersionData> result = new TreeMap<>();
+        decided.forEach((id, versionData) -> {
+            VersionData current = installed.get(id);
+            if (current == null || !current.getVersion().equals(versionData.getVersion())) result.put(id, versionData);
+        });
+        return result;
+    }
+
+    private boolean search(TreeSet<String> pending) {
+        if (pending.isEmpty()) return true;
+        if (++steps > MAX_STEPS) return false;
+        String state = stateKey(pending);
+        if (failedStates.contains(state)) return false;
+        String id = pending.first();
+        List<VersionData> versions = getCandidates(id);
+        if (versions.isEmpty()) conflict = "The module '" + id + "' is not available in the cloud";
+        for (VersionData candidate : versions) {
+            if (!isAcceptedByDependents(id, candidate)) continue;
+            TreeSet<String> nextPending = new TreeSet<>(pending);
+            nextPending.remove(id);
+            if (!addDependencies(id, candidate, nextPending)) continue;
+            assignment.put(id, candidate);
+            decided.put(id, candidate);
+            if (search(nextPending)) return true;
+            assignment.remove(id);
+            decided.remove(id);
+            if (steps > MAX_STEPS) return false;
+        }
+        failedStates.add(state);
+        return false;
+    }
+
+    private String stateKey(Set<String> pending) {
+        StringBuilder key = new StringBuilder();
+        decided.forEach((id, versionData) -> key.append(id).append('@').append(versionData.getVersion()).append(','));
+        key.append('|');
+        pending.forEach(id -> key.append(id).append(','));
+        return key.toString();
+    }
+
+    /**
+     * Versions of a module newest first. An installed requested module can keep its installed version.
+     */
+    private List<VersionData> getCandidates(String id) {
+        return candidates.computeIfAbsent(id, key -> {
+            List<VersionData> versions = new ArrayList<>();
+            CloudModuleData cloudModule = catalog.get(id);
+            if (cloudModule != null && cloudModule.getVersions() != null) versions.addAll(cloudModule.getVersions());
+            VersionData current = installed.get(id);
+            if (current != null && versions.stream().noneMatch(versionData -> versionData.getVersion().equals(current.getVersion()))) {
+                versions.add(current);
+            }
+            versions.sort((a, b) -> b.getVersion().compareTo(a.getVersion()));
+            return versions;
+        });
+    }
+
+    private boolean isAcceptedByDependents(String id, VersionData candidate) {
+        for (Map.Entry<String, VersionData> dependent : assignment.entrySet()) {
+            for (DependencyData dependency : dependenciesOf(dependent.getValue())) {
+                if (!dependency.getId().equals(id) || matches(dependency, candidate.getVersion())) continue;
+                conflict = "'" + dependent.getKey() + "' requires '" + id + "' " + dependency.getVersionConstrain();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean addDependencies(String id, VersionData candidate, Set<String> pending) {
+        for (DependencyData dependency : dependenciesOf(candidate)) {
+            VersionData picked = assignment.get(dependency.getId());
+            if (picked != null) {
+                if (matches(dependency, picked.getVersion())) continue;
+                conflict = "'" + id + "' @" + candidate.getVersion() + " requires '" + dependency.getId() + "' " + dependency.getVersionConstrain();
+                return false;
+            }
+            if (!dependency.isSoftDependency() || requested.contains(dependency.getId())) {
+                pending.add(dependency.getId());
+            }
+        }
+        return true;
+    }
+
+    private static List<DependencyData> dependenciesOf(VersionData versionData) {
+        return versionData.getDependencies() == null ? Collections.emptyList() : versionData.getDependencies();
+    }
+
+    private static boolean matches(DependencyData dependency, SemanticVersion version) {
+        String constrain = dependency.getVersionConstrain();
+        if (constrain == null || constrain.isEmpty()) return true;
+        try {
+            return VersionConstraint.of(constrain).matches(version);
+        } catch (ParseException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
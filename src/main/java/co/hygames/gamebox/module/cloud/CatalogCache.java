@@ -0,0 +1,206 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import co.hygames.gamebox.module.data.CloudModuleData;
+import co.hygames.gamebox.utilities.FileUtility;
+import co.hygames.gamebox.utilities.GameBoxGsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Properties;
+
+/**
+ * On-disk copy of the last received module catalog together with its HTTP validators.
+ *
+ * A new catalog is recorded while it is being parsed and only replaces the cached copy once it was read completely.
+ * The validators are written after the catalog, so they never describe a catalog that is not on disk.
+ *
+ * @author Niklas Eicker
+ */
+public class CatalogCache {
+    public static final String FILE_NAME = ".catalog.json";
+    private static final String VALIDATORS_FILE_NAME = ".catalog.properties";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last-modified";
+
+    private final TypeAdapter<CloudModuleData> moduleAdapter = GameBoxGsonBuilder.build().getAdapter(CloudModuleData.class);
+    private final File catalogFile;
+    private final File validatorsFile;
+    private final File recordingFile;
+    private String eTag;
+    private String lastModified;
+    private OutputStream recording;
+
+    public CatalogCache(File directory) {
+        this.catalogFile = new File(directory, FILE_NAME);
+        this.validatorsFile = new File(directory, VALIDATORS_FILE_NAME);
+        this.recordingFile = new File(directory, FILE_NAME + ".tmp");
+    }
+
+    /**
+     * Load the validators of the cached catalog. Without a cached catalog the validators are dropped.
+     */
+    public void load() {
+        eTag = null;
+        lastModified = null;
+        if (!catalogFile.isFile() || !validatorsFile.isFile()) return;
+        Properties validators = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(validatorsFile), StandardCharsets.UTF_8)) {
+            validators.load(reader);
+        } catch (IOException e) {
+            // no validators means an unconditional request
+            return;
+        }
+        eTag = validators.getProperty(KEY_ETAG);
+        lastModified = validators.getProperty(KEY_LAST_MODIFIED);
+    }
+
+    public boolean exists() {
+        return catalogFile.isFile();
+    }
+
+    /**
+     * Open the cached catalog
+     *
+     * @return buffered UTF-8 reader of the cached catalog
+     * @throws IOException if there is no readable cached catalog
+     */
+    public Reader openReader() throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(catalogFile), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Record everything that is read from the given stream into a temporary file
+     *
+     * @param body catalog stream
+     * @return stream that has to be used instead of the given one
+     * @throws IOException if the temporary file cannot be created
+     */
+    public InputStream record(InputStream body) throws IOException {
+        discard();
+        recording = new BufferedOutputStream(new FileOutputStream(recordingFile));
+        final OutputStream copy = recording;
+        return new FilterInputStream(body) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) copy.write(b);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) copy.write(buffer, offset, read);
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // skipped bytes have to end up in the copy as well
+                byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                int read = read(buffer, 0, buffer.length);
+                return Math.max(read, 0);
+            }
+        };
+    }
+
+    /**
+     * Replace the cached catalog with the recorded one
+     *
+     * @param recorded     the stream returned by {@link #record(InputStream)}; the rest of it is copied, too
+     * @param eTag         entity tag of the recorded catalog, or null
+     * @param lastModified last modification date of the recorded catalog, or null
+     * @throws IOException if the catalog or its validators cannot be written
+     */
+    public void commit(InputStream recorded, String eTag, String lastModified) throws IOException {
+        if (recording == null) throw new IllegalStateException("There is no recorded catalog");
+        byte[] buffer = new byte[8192];
+        while (recorded.read(buffer) != -1) {
+            // drain trailing whitespace, so that the copy is complete
+        }
+        recording.close();
+        recording = null;
+        FileUtility.moveAtomically(recordingFile, catalogFile);
+        saveValidators(eTag, lastModified);
+    }
+
+    /**
+     * Replace the cached catalog with the given modules. This is used after merging incremental updates into the
+     * catalog. The result does not correspond to any response of the cloud, so the validators are dropped.
+     *
+     * @param modules the complete catalog
+     * @throws IOException if the catalog cannot be written
+     */
+    public void write(Collection<CloudModuleData> modules) throws IOException {
+        discard();
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(recordingFile), StandardCharsets.UTF_8)))) {
+            writer.beginArray();
+            for (CloudModuleData moduleData : modules) {
+                moduleAdapter.write(writer, moduleData);
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            discard();
+            throw e;
+        }
+        FileUtility.moveAtomically(recordingFile, catalogFile);
+        saveValidators(null, null);
+    }
+
+    private void saveValidators(String eTag, String lastModified) throws IOException {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        Properties validators = new Properties();
+        if (eTag != null) validators.setProperty(KEY_ETAG, eTag);
+        if (lastModified != null) validators.setProperty(KEY_LAST_MODIFIED, lastModified);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(validatorsFile), StandardCharsets.UTF_8)) {
+            validators.store(writer, "Validators of the cached module catalog");
+        }
+    }
+
+    /**
+     * Drop a recorded catalog that was not committed
+     */
+    public void discard() {
+        if (recording != null) {
+            try {
+                recording.close();
+            } catch (IOException ignored) {
+                // the file is deleted anyway
+            }
+            recording = null;
+        }
+        if (recordingFile.exists() && !recordingFile.delete()) {
+            recordingFile.deleteOnExit();
+        }
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+}
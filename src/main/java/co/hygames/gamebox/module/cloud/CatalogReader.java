@@ -0,0 +1,76 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import co.hygames.gamebox.module.data.CloudModuleData;
+import co.hygames.gamebox.utilities.GameBoxGsonBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader for the module catalog.
+ *
+ * The catalog is a json array of modules. Instead of binding the whole array at once, every module is handed
+ * to the consumer as soon as it is parsed. Fields that {@link CloudModuleData} does not know are skipped by the reader.
+ *
+ * @author Niklas Eicker
+ */
+public class CatalogReader {
+    private final TypeAdapter<CloudModuleData> moduleAdapter;
+
+    public CatalogReader() {
+        this(GameBoxGsonBuilder.build());
+    }
+
+    public CatalogReader(Gson gson) {
+        this.moduleAdapter = gson.getAdapter(CloudModuleData.class);
+    }
+
+    /**
+     * Read a catalog and pass each module to the consumer
+     *
+     * @param reader   reader positioned at the start of the catalog array; it is not closed
+     * @param consumer gets every module with an id in the order of the catalog
+     * @return number of modules passed to the consumer
+     * @throws IOException if reading fails or the catalog is malformed
+     */
+    public int read(Reader reader, Consumer<CloudModuleData> consumer) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        int count = 0;
+        try {
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                CloudModuleData moduleData = moduleAdapter.read(jsonReader);
+                if (moduleData == null || moduleData.getId() == null) continue;
+                consumer.accept(moduleData);
+                count++;
+            }
+            jsonReader.endArray();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Malformed module catalog", e);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response of a conditional catalog request.
+ * Either the catalog was not modified since the given validators, or the body contains the new catalog.
+ *
+ * @author Niklas Eicker
+ */
+public class CatalogResponse implements Closeable {
+    private final InputStream body;
+    private final String eTag;
+    private final String lastModified;
+
+    private CatalogResponse(InputStream body, String eTag, String lastModified) {
+        this.body = body;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    public static CatalogResponse notModified() {
+        return new CatalogResponse(null, null, null);
+    }
+
+    public static CatalogResponse modified(InputStream body, String eTag, String lastModified) {
+        return new CatalogResponse(body, eTag, lastModified);
+    }
+
+    public boolean isNotModified() {
+        return body == null;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (body != null) body.close();
+    }
+}
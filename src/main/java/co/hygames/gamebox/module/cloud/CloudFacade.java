@@ -19,28 +19,75 @@
 package co.hygames.gamebox.module.cloud;
 
 import co.hygames.gamebox.exceptions.module.GameBoxCloudException;
-import co.hygames.gamebox.module.data.CloudModuleData;
-import com.google.gson.Gson;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
+import java.net.HttpURLConnection;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class CloudFacade {
-    //private static final String API_BASE_URL = "https://api.hygames.co/gamebox/";
-    private static final String API_BASE_URL = "http://127.0.0.1:4000/gamebox/";
-    private static final Gson GSON = new Gson();
+    private final CloudTransport transport;
 
-    public ApiResponse<CloudModuleData[]> getCloudModuleData() {
+    public CloudFacade() {
+        this(new HttpCloudTransport());
+    }
+
+    public CloudFacade(String apiBaseUrl) {
+        this(new HttpCloudTransport(apiBaseUrl));
+    }
+
+    public CloudFacade(CloudTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Request the module catalog. If validators of a cached catalog are given, the request is conditional.
+     *
+     * @param eTag         entity tag of the cached catalog or null
+     * @param lastModified last modification date of the cached catalog or null
+     * @return the catalog response, that has to be closed by the caller
+     */
+    public ApiResponse<CatalogResponse> getCloudModuleData(String eTag, String lastModified) {
+        return requestCatalog("modules", eTag, lastModified);
+    }
+
+    /**
+     * Request all modules that changed after the given time. Removed modules are included as tombstones.
+     *
+     * @param updatedSince newest update time of the local catalog
+     * @return the changed modules, that have to be closed by the caller
+     * @see co.hygames.gamebox.module.data.CloudModuleData#isDeleted()
+     */
+    public ApiResponse<CatalogResponse> getChangedCloudModuleData(long updatedSince) {
+        return requestCatalog("modules?updatedSince=" + updatedSince, null, null);
+    }
+
+    private ApiResponse<CatalogResponse> requestCatalog(String path, String eTag, String lastModified) {
+        Map<String, String> headers = new HashMap<>();
+        if (eTag != null) headers.put("If-None-Match", eTag);
+        if (lastModified != null) headers.put("If-Modified-Since", lastModified);
         try {
-            CloudModuleData[] modulesData = GSON.fromJson(new InputStreamReader(new URL(API_BASE_URL + "modules").openStream()), CloudModuleData[].class);
-            return new ApiResponse<>(modulesData, null);
+            CloudTransport.Response response = transport.get(path, headers);
+            int status = response.getStatus();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                response.close();
+                return new ApiResponse<>(CatalogResponse.notModified(), null);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                response.close();
+                return new ApiResponse<>(null, new GameBoxCloudException("Unexpected response from the cloud: " + status));
+            }
+            return new ApiResponse<>(CatalogResponse.modified(response.getBody(),
+                    response.getHeader("ETag"), response.getHeader("Last-Modified")), null);
         } catch (UnknownHostException e) {
             return new ApiResponse<>(null, new GameBoxCloudException("Connection problem to the cloud. Please make sure that you are connected to the internet.", e));
         } catch (IOException e) {
             return new ApiResponse<>(null, new GameBoxCloudException(e));
         }
     }
-}
 
+    public CloudTransport getTransport() {
+        return transport;
+    }
+}
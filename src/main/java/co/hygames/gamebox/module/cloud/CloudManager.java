@@ -24,49 +24,205 @@ import co.hygames.gamebox.exceptions.module.GameBoxCloudException;
 import co.hygames.gamebox.exceptions.module.InvalidModuleException;
 import co.hygames.gamebox.module.data.CloudModuleData;
 import co.hygames.gamebox.module.data.ModuleBasicData;
+import co.hygames.gamebox.module.data.VersionData;
 import co.hygames.gamebox.module.local.LocalModule;
+import co.hygames.gamebox.module.local.ModuleStore;
+import co.hygames.gamebox.utilities.FileUtility;
+import co.hygames.gamebox.utilities.ThreadUtility;
 import co.hygames.gamebox.utilities.versioning.SemanticVersion;
-import com.google.gson.Gson;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * @author Niklas Eicker
  */
 public class CloudManager {
-    private static final String API_BASE_URL = "https://api.hygames.co/gamebox/";
-    //private static final String API_BASE_URL = "http://127.0.0.1:4000/gamebox/";
-    private static final Gson GSON = new Gson();
+
+    private static final int PARALLEL_DOWNLOADS = 8;
+    private static final int CONNECTIONS_PER_ENDPOINT = 4;
+    private static final Executor REFRESH_EXECUTOR = runnable -> ThreadUtility.namedDaemonThreadFactory("cloud-refresh").newThread(runnable).start();
 
     private GameBox gameBox;
     private CloudFacade facade;
-    private Map<String, CloudModuleData> cloudContent = new HashMap<>();
-    private Map<String, Thread> downloadingModules = new HashMap<>();
+    private CatalogReader catalogReader = new CatalogReader();
+    private CatalogCache catalogCache;
+    private volatile boolean catalogLoaded = false;
+    private volatile long newestUpdateAt = 0;
+    private Map<String, CloudModuleData> cloudContent = new ConcurrentHashMap<>();
+    private DownloadManager downloadManager = new DownloadManager(PARALLEL_DOWNLOADS, CONNECTIONS_PER_ENDPOINT);
 
-    public CloudManager(GameBox gameBox, CloudFacade facade) {
+    public CloudManager(GameBox gameBox, CloudFacade facade, File cacheDir) {
         this.gameBox = gameBox;
         this.facade = facade;
+        this.catalogCache = new CatalogCache(cacheDir);
+        catalogCache.load();
     }
 
-    public void updateCloudContent() throws GameBoxCloudException {
-        ApiResponse<CloudModuleData[]> response = this.facade.getCloudModuleData();
+    /**
+     * Fill the cloud content from the catalog cached on disk
+     *
+     * @return whether a cached catalog was loaded
+     */
+    public synchronized boolean loadCachedCloudContent() {
+        if (!catalogCache.exists()) return false;
+        try (Reader reader = catalogCache.openReader()) {
+            CatalogUpdate update = new CatalogUpdate();
+            int count = catalogReader.read(reader, update::add);
+            replaceCloudContent(update);
+            catalogLoaded = true;
+            gameBox.getLogger().fine("Loaded moduledata for " + count + " modules from the cached catalog");
+            return true;
+        } catch (IOException e) {
+            gameBox.getLogger().warning("Failed to read the cached module catalog");
+            // the validators belong to the broken cache, so the next request has to be unconditional
+            catalogCache.discard();
+            catalogCache.load();
+            return false;
+        }
+    }
+
+    /**
+     * Refresh the cloud content.
+     *
+     * Once a catalog is loaded, only the modules that changed since its newest update are requested and merged.
+     * If that fails, the whole catalog is synced instead.
+     *
+     * @throws GameBoxCloudException if the catalog cannot be requested or read
+     */
+    public synchronized void updateCloudContent() throws GameBoxCloudException {
+        if (catalogLoaded && newestUpdateAt > 0) {
+            try {
+                syncChangedCloudContent();
+                return;
+            } catch (GameBoxCloudException e) {
+                gameBox.getLogger().warning("Incremental update of the module catalog failed. Falling back to a full update...");
+                gameBox.getLogger().fine("    " + e.getMessage());
+            }
+        }
+        syncCloudContent();
+    }
+
+    /**
+     * Merge the modules that changed since the newest known update into the cloud content
+     */
+    private void syncChangedCloudContent() throws GameBoxCloudException {
+        ApiResponse<CatalogResponse> response = this.facade.getChangedCloudModuleData(newestUpdateAt);
         if (response.getError() != null) {
             throw response.getError();
         }
-        cloudContent.clear();
-        for (CloudModuleData moduleData : response.getData()) {
-            cloudContent.put(moduleData.getId(), moduleData);
-            gameBox.getLogger().info("got moduledata for id:'" + moduleData.getId() + "'");
+        try (CatalogResponse changes = response.getData()) {
+            if (changes.isNotModified()) return;
+            Reader reader = new BufferedReader(new InputStreamReader(changes.getBody(), StandardCharsets.UTF_8));
+            CatalogUpdate update = new CatalogUpdate();
+            int count = catalogReader.read(reader, update::add);
+            if (count == 0) {
+                gameBox.getLogger().fine("The module catalog did not change");
+                return;
+            }
+            cloudContent.putAll(update.modules);
+            cloudContent.keySet().removeAll(update.deletedIds);
+            newestUpdateAt = Math.max(newestUpdateAt, update.newestUpdateAt);
+            catalogCache.write(cloudContent.values());
+            gameBox.getLogger().info("Updated moduledata for " + count + " modules from the cloud");
+        } catch (IOException e) {
+            throw new GameBoxCloudException(e);
         }
     }
 
+    /**
+     * Replace the cloud content with the complete catalog. The request is conditional on the cached catalog,
+     * so an unchanged catalog is neither downloaded nor parsed again.
+     */
+    private void syncCloudContent() throws GameBoxCloudException {
+        ApiResponse<CatalogResponse> response = this.facade.getCloudModuleData(
+                catalogLoaded ? catalogCache.getETag() : null, catalogLoaded ? catalogCache.getLastModified() : null);
+        if (response.getError() != null) {
+            throw response.getError();
+        }
+        try (CatalogResponse catalog = response.getData()) {
+            if (catalog.isNotModified()) {
+                gameBox.getLogger().fine("The module catalog did not change");
+                return;
+            }
+            InputStream body = catalogCache.record(catalog.getBody());
+            Reader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            CatalogUpdate update = new CatalogUpdate();
+            int count = catalogReader.read(reader, moduleData -> {
+                update.add(moduleData);
+                gameBox.getLogger().fine("got moduledata for id:'" + moduleData.getId() + "'");
+            });
+            replaceCloudContent(update);
+            catalogLoaded = true;
+            catalogCache.commit(body, catalog.getETag(), catalog.getLastModified());
+            gameBox.getLogger().info("Got moduledata for " + count + " modules from the cloud");
+        } catch (IOException e) {
+            catalogCache.discard();
+            throw new GameBoxCloudException(e);
+        }
+    }
+
+    /**
+     * Replace the cloud content with a completely read catalog
+     */
+    private void replaceCloudContent(CatalogUpdate update) {
+        cloudContent.putAll(update.modules);
+        // modules that are no longer in the catalog
+        cloudContent.keySet().retainAll(update.modules.keySet());
+        newestUpdateAt = update.newestUpdateAt;
+    }
+
+    /**
+     * Refresh the cloud content on a background thread
+     *
+     * @return future that completes once the refresh is done
+     * @see #updateCloudContent()
+     */
+    public CompletableFuture<Void> updateCloudContentAsync() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                updateCloudContent();
+            } catch (GameBoxCloudException e) {
+                throw new CompletionException(e);
+            }
+        }, REFRESH_EXECUTOR);
+    }
+
+    /**
+     * Load the cached catalog and refresh it from the cloud, both on a background thread
+     *
+     * @return future that completes once the refresh is done. If the refresh fails, the cached catalog stays loaded.
+     * @see #loadCachedCloudContent()
+     * @see #updateCloudContent()
+     */
+    public CompletableFuture<Void> loadCloudContentAsync() {
+        return CompletableFuture.runAsync(() -> {
+            if (!loadCachedCloudContent()) {
+                gameBox.getLogger().info("No cached cloud content found. It will be available once loaded from the cloud.");
+            }
+            try {
+                updateCloudContent();
+            } catch (GameBoxCloudException e) {
+                throw new CompletionException(e);
+            }
+        }, REFRESH_EXECUTOR);
+    }
+
 //    public void updateCloudModule(String moduleId) throws GameBoxCloudException {
 //        try {
 //            CloudModuleData moduleData = GSON.fromJson(new InputStreamReader(new URL(API_BASE_URL + "modules/" + moduleId).openStream()), CloudModuleData.class);
@@ -82,6 +238,13 @@ public class CloudManager {
         return cloudModuleData;
     }
 
+    /**
+     * @return read only view of all modules in the catalog by their id
+     */
+    public Map<String, CloudModuleData> getCloudContent() {
+        return Collections.unmodifiableMap(cloudContent);
+    }
+
     public boolean hasUpdate(LocalModule localModule) {
         CloudModuleData cloudModule = cloudContent.get(localModule.getId());
         if (cloudModule == null) {
@@ -94,46 +257,105 @@ public class CloudManager {
     }
 
     public void downloadModule(CloudModuleData cloudModule, SemanticVersion version, Callback<ModuleBasicData> callback) {
+        downloadModule(cloudModule, version, gameBox.getModulesManager().getModulesDir(), callback);
+    }
+
+    /**
+     * Download a module jar, or link it from the module store if it was downloaded before
+     *
+     * @param cloudModule the module to download
+     * @param version     the version to download
+     * @param directory   existing directory to place the jar in
+     * @param callback    called with the module read from the jar
+     */
+    public void downloadModule(CloudModuleData cloudModule, SemanticVersion version, File directory, Callback<ModuleBasicData> callback) {
         final String fileName = cloudModule.getId() + "@" + version.toString() + ".jar";
-        try {
-            final File outputFile = new File(gameBox.getModulesManager().getModulesDir(), fileName);
-            if (outputFile.isFile()) {
-                gameBox.getLogger().info("Module " + cloudModule.getName() + " @" + version.toString() + " already exists...");
-                gameBox.getLogger().info("   skipping download of '" + fileName + "'");
-                try {
-                    LocalModule localModule = LocalModule.fromJar(outputFile);
-                    callback.success(localModule);
-                } catch (InvalidModuleException e) {
-                    callback.fail(null, e);
-                }
+        final File outputFile = new File(directory, fileName);
+        if (outputFile.isFile()) {
+            gameBox.getLogger().info("Module " + cloudModule.getName() + " @" + version.toString() + " already exists...");
+            gameBox.getLogger().info("   skipping download of '" + fileName + "'");
+            try {
+                LocalModule localModule = LocalModule.fromJar(outputFile);
+                callback.success(localModule);
+            } catch (InvalidModuleException e) {
+                callback.fail(cloudModule, e);
+            }
+            return;
+        }
+        final String checksum = getChecksum(cloudModule, version);
+        final ModuleStore moduleStore = gameBox.getModulesManager().getModuleStore();
+        if (moduleStore.contains(checksum)) {
+            gameBox.getLogger().info("Module " + cloudModule.getName() + " @" + version.toString() + " is in the module store");
+            gameBox.getLogger().info("   skipping download of '" + fileName + "'");
+            try {
+                moduleStore.link(checksum, outputFile);
+                callback.success(LocalModule.fromJar(outputFile));
+            } catch (IOException | InvalidModuleException e) {
+                callback.fail(cloudModule, e);
+            }
+            return;
+        }
+        downloadManager.download(fileName, facade.getTransport(), "assets/modules/" + fileName, outputFile, checksum).getFuture().whenComplete((file, exception) -> {
+            if (exception != null) {
+                callback.fail(cloudModule, exception instanceof Exception ? (Exception) exception : new IOException(exception));
                 return;
             }
-            final URL fileUrl = new URL(API_BASE_URL + "assets/modules/" + fileName);
-
-            // download
-            downloadingModules.put(fileName, new Thread(() -> {
-                try (BufferedInputStream in = new BufferedInputStream(fileUrl.openStream());
-                     FileOutputStream fileOutputStream = new FileOutputStream(outputFile)) {
-                    byte dataBuffer[] = new byte[1024];
-                    int bytesRead;
-                    while ((bytesRead = in.read(dataBuffer, 0, 1024)) != -1) {
-                        fileOutputStream.write(dataBuffer, 0, bytesRead);
-                    }
-                    LocalModule localModule = LocalModule.fromJar(outputFile);
-                    callback.success(localModule);
-                } catch (IOException | InvalidModuleException exception) {
-                    callback.fail(null, exception);
-                } finally {
-                    downloadingModules.remove(fileName);
-                }
-            }));
-            downloadingModules.get(fileName).start();
-        } catch (MalformedURLException e) {
-            callback.fail(null, e);
+            try {
+                moduleStore.adopt(file, checksum != null ? checksum : FileUtility.sha256(file));
+            } catch (IOException e) {
+                // the jar is in place, it is only not shared
+                gameBox.getLogger().warning("Failed to add '" + fileName + "' to the module store");
+            }
+            try {
+                callback.success(LocalModule.fromJar(file));
+            } catch (InvalidModuleException e) {
+                callback.fail(cloudModule, e);
+            }
+        });
+    }
+
+    private static String getChecksum(CloudModuleData cloudModule, SemanticVersion version) {
+        if (cloudModule.getVersions() == null) return null;
+        for (VersionData versionData : cloudModule.getVersions()) {
+            if (version.equals(versionData.getVersion())) {
+                // the module store only accepts lowercase hashes
+                return versionData.getChecksum() == null ? null : versionData.getChecksum().toLowerCase(Locale.ROOT);
+            }
         }
+        return null;
     }
 
     public boolean isDownloading() {
-        return !downloadingModules.isEmpty();
+        return downloadManager.isDownloading();
+    }
+
+    public DownloadManager getDownloadManager() {
+        return downloadManager;
+    }
+
+    /**
+     * Modules read from a catalog stream. They are only applied to the cloud content once the stream was read
+     * completely, so a broken stream cannot leave a mix of the old and the new catalog behind.
+     */
+    private static class CatalogUpdate {
+        private final Map<String, CloudModuleData> modules = new HashMap<>();
+        private final Set<String> deletedIds = new HashSet<>();
+        private long newestUpdateAt = 0;
+
+        /**
+         * Add, replace or, for tombstones, remove a module
+         */
+        private void add(CloudModuleData moduleData) {
+            if (moduleData.getLastUpdateAt() != null && moduleData.getLastUpdateAt() > newestUpdateAt) {
+                newestUpdateAt = moduleData.getLastUpdateAt();
+            }
+            if (moduleData.isDeleted()) {
+                modules.remove(moduleData.getId());
+                deletedIds.add(moduleData.getId());
+            } else {
+                modules.put(moduleData.getId(), moduleData);
+                deletedIds.remove(moduleData.getId());
+            }
+        }
     }
 }
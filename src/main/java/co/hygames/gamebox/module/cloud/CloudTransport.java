@@ -0,0 +1,74 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Carries requests of the cloud facade and the download manager to the GameBox API.
+ *
+ * Paths are relative to the base of the API, e.g. "modules" or "assets/modules/id@1.0.0.jar".
+ *
+ * @author Niklas Eicker
+ */
+public interface CloudTransport {
+
+    /**
+     * Request a resource
+     *
+     * @param path    path relative to the API base, optionally with a query
+     * @param headers request headers, e.g. validators of a conditional request or a range
+     * @return the response, that has to be closed by the caller
+     * @throws IOException if the API cannot be reached
+     */
+    Response get(String path, Map<String, String> headers) throws IOException;
+
+    /**
+     * @return the API endpoint, used to limit the connections per endpoint
+     */
+    String getEndpoint();
+
+    interface Response extends Closeable {
+
+        /**
+         * @return HTTP status code of the response
+         */
+        int getStatus();
+
+        /**
+         * @param name header name, case insensitive
+         * @return the header value or null
+         */
+        String getHeader(String name);
+
+        /**
+         * @return the decoded body
+         * @throws IOException if the body cannot be opened
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * @return length of the decoded body, or -1 if unknown
+         */
+        long getContentLength();
+    }
+}
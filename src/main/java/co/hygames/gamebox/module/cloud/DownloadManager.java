@@ -0,0 +1,403 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import co.hygames.gamebox.utilities.FileUtility;
+import co.hygames.gamebox.utilities.ThreadUtility;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Downloads files on a bounded pool of worker threads.
+ *
+ * Every endpoint is limited to a number of concurrent connections. A worker waiting for a connection to a busy endpoint
+ * keeps its place in the pool, so the pool size should be larger than the per host limit.
+ * Running downloads are registered by key; requesting a download that is already running returns the running one.
+ *
+ * Data is written to a '.part' file next to the target, which is moved into place once it is complete and,
+ * if a checksum is known, verified. A part file left behind by a failed download is resumed with a range request.
+ * The validator of the response (ETag or Last-Modified) is kept in a '.part.validator' file and sent as 'If-Range',
+ * so that the server answers with the full file if it changed in the meantime. Part files without a validator are
+ * downloaded again from the start.
+ *
+ * @author Niklas Eicker
+ */
+public class DownloadManager {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private final ExecutorService executor;
+    private final int connectionsPerEndpoint;
+    private final Map<String, Download> downloads = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> endpointConnections = new ConcurrentHashMap<>();
+    private final Metrics metrics = new Metrics();
+
+    public DownloadManager(int parallelDownloads, int connectionsPerEndpoint) {
+        this.executor = Executors.newFixedThreadPool(parallelDownloads, ThreadUtility.namedDaemonThreadFactory("download"));
+        this.connectionsPerEndpoint = connectionsPerEndpoint;
+    }
+
+    /**
+     * Download a file. If a download with the same key is already running, that download is returned instead.
+     *
+     * @param key       unique key of the download, e.g. the file name
+     * @param transport transport to the API that serves the file
+     * @param path      path of the file relative to the API base
+     * @param target    file to write to
+     * @return the running download
+     */
+    public Download download(String key, CloudTransport transport, String path, File target) {
+        return download(key, transport, path, target, null);
+    }
+
+    /**
+     * Download a file and verify its SHA-256 checksum before moving it into place.
+     *
+     * @param key       unique key of the download, e.g. the file name
+     * @param transport transport to the API that serves the file
+     * @param path      path of the file relative to the API base
+     * @param target    file to write to
+     * @param checksum  lowercase hex SHA-256 of the file, or null to skip the check
+     * @return the running download
+     * @see #download(String, CloudTransport, String, File)
+     */
+    public Download download(String key, CloudTransport transport, String path, File target, String checksum) {
+        Download download = new Download(key, transport, path, target, checksum);
+        Download running = downloads.putIfAbsent(key, download);
+        if (running != null) return running;
+        // also unregisters downloads that are cancelled before they started
+        download.future.whenComplete((file, exception) -> downloads.remove(key, download));
+        download.task = executor.submit(() -> run(download));
+        return download;
+    }
+
+    private void run(Download download) {
+        if (download.isCancelled()) return;
+        Semaphore connections = endpointConnections.computeIfAbsent(download.transport.getEndpoint(), endpoint -> new Semaphore(connectionsPerEndpoint));
+        try {
+            connections.acquire();
+            try {
+                transfer(download);
+            } finally {
+                connections.release();
+            }
+            metrics.completed.increment();
+            downloads.remove(download.key, download);
+            download.future.complete(download.target);
+        } catch (InterruptedException | CancellationException e) {
+            cancelled(download);
+        } catch (IOException | RuntimeException e) {
+            if (download.isCancelled() || e instanceof ClosedByInterruptException) {
+                // the interrupt of a cancel closed the channels during the transfer
+                cancelled(download);
+                return;
+            }
+            // the part file is kept, so that the next attempt can resume
+            metrics.failed.increment();
+            downloads.remove(download.key, download);
+            download.future.completeExceptionally(e);
+        }
+    }
+
+    private void cancelled(Download download) {
+        download.discardPartFile();
+        download.future.cancel(false);
+    }
+
+    private void transfer(Download download) throws IOException {
+        long start = System.nanoTime();
+        long position = download.partFile.isFile() ? download.partFile.length() : 0;
+        String validator = position > 0 ? readValidator(download) : null;
+        Map<String, String> headers = new HashMap<>();
+        if (validator != null) {
+            headers.put("Range", "bytes=" + position + "-");
+            headers.put("If-Range", validator);
+        }
+        CloudTransport.Response response = download.transport.get(download.path, headers);
+        try {
+            int status = response.getStatus();
+            if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+                // the part file does not belong to the current file
+                download.discardPartFile();
+                response.close();
+                transfer(download);
+                return;
+            }
+            if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) {
+                response.close();
+                throw new IOException("Unexpected response for '" + download.path + "': " + status);
+            }
+            if (status == HttpURLConnection.HTTP_PARTIAL && getRangeStart(response) != position) {
+                response.close();
+                // the next attempt downloads the whole file
+                download.validatorFile.delete();
+                throw new IOException("Unexpected range for '" + download.path + "': " + response.getHeader("Content-Range"));
+            }
+            if (status != HttpURLConnection.HTTP_PARTIAL) {
+                // a new or changed file, the part file is overwritten
+                position = 0;
+                writeValidator(download, response);
+            }
+            try (InputStream in = response.getBody();
+                 ReadableByteChannel source = Channels.newChannel(new UnclosableInputStream(in));
+                 FileChannel out = FileChannel.open(download.partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                metrics.recordLatency(System.nanoTime() - start);
+                out.truncate(position);
+                long length = response.getContentLength();
+                download.contentLength = length < 0 ? -1 : position + length;
+                download.bytesRead.set(position);
+                long transferred;
+                while ((transferred = out.transferFrom(source, position, CHUNK_SIZE)) > 0) {
+                    if (download.isCancelled()) throw new CancellationException();
+                    position += transferred;
+                    download.bytesRead.addAndGet(transferred);
+                    metrics.bytes.add(transferred);
+                }
+                out.force(false);
+            }
+        } finally {
+            metrics.transferNanos.add(System.nanoTime() - start);
+        }
+        if (download.contentLength >= 0 && position != download.contentLength) {
+            // the part file and its validator are kept, so that the next attempt resumes
+            throw new IOException("Incomplete download of '" + download.path + "': got " + position + " of " + download.contentLength + " bytes");
+        }
+        if (download.checksum != null) {
+            String actual = FileUtility.sha256(download.partFile);
+            if (!download.checksum.equalsIgnoreCase(actual)) {
+                download.discardPartFile();
+                throw new IOException("Checksum mismatch for '" + download.target.getName() + "': expected " + download.checksum + " but got " + actual);
+            }
+        }
+        FileUtility.moveAtomically(download.partFile, download.target);
+        download.validatorFile.delete();
+    }
+
+    /**
+     * @return first byte of a partial response, or -1 if the Content-Range header is missing or invalid
+     */
+    private static long getRangeStart(CloudTransport.Response response) {
+        String range = response.getHeader("Content-Range");
+        if (range == null || !range.startsWith("bytes ")) return -1;
+        int dash = range.indexOf('-');
+        if (dash < 0) return -1;
+        try {
+            return Long.parseLong(range.substring("bytes ".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String readValidator(Download download) {
+        if (!download.validatorFile.isFile()) return null;
+        try {
+            String validator = new String(Files.readAllBytes(download.validatorFile.toPath()), StandardCharsets.UTF_8).trim();
+            return validator.isEmpty() ? null : validator;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeValidator(Download download, CloudTransport.Response response) throws IOException {
+        String validator = response.getHeader("ETag");
+        // weak ETags are not allowed in If-Range
+        if (validator == null || validator.startsWith("W/")) validator = response.getHeader("Last-Modified");
+        if (validator == null) {
+            download.validatorFile.delete();
+        } else {
+            Files.write(download.validatorFile.toPath(), validator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public boolean isDownloading() {
+        return !downloads.isEmpty();
+    }
+
+    public Download getDownload(String key) {
+        return downloads.get(key);
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Cancel all downloads and stop the workers
+     */
+    public void shutdown() {
+        downloads.values().forEach(Download::cancel);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Interrupting a thread that reads from a channel closes the channel in the interrupting thread. HTTP response
+     * streams block on close until a pending read returns, which would block whoever cancels the download.
+     * The stream is closed by the worker instead, once the read returned or timed out.
+     */
+    private static class UnclosableInputStream extends FilterInputStream {
+        private UnclosableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // closed by the worker
+        }
+    }
+
+    /**
+     * A single running or finished download
+     */
+    public static class Download {
+        private final String key;
+        private final CloudTransport transport;
+        private final String path;
+        private final File target;
+        private final File partFile;
+        private final File validatorFile;
+        private final String checksum;
+        private final CompletableFuture<File> future = new CompletableFuture<>();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private volatile long contentLength = -1;
+        private volatile Future<?> task;
+
+        private Download(String key, CloudTransport transport, String path, File target, String checksum) {
+            this.key = key;
+            this.transport = transport;
+            this.path = path;
+            this.target = target;
+            this.partFile = new File(target.getPath() + ".part");
+            this.validatorFile = new File(target.getPath() + ".part.validator");
+            this.checksum = checksum;
+        }
+
+        /**
+         * @return future that completes with the downloaded file, or is cancelled together with the download
+         */
+        public CompletableFuture<File> getFuture() {
+            return future;
+        }
+
+        private void discardPartFile() {
+            partFile.delete();
+            validatorFile.delete();
+        }
+
+        /**
+         * Cancel the download. The partially downloaded file is deleted.
+         */
+        public void cancel() {
+            future.cancel(false);
+            Future<?> task = this.task;
+            if (task != null) task.cancel(true);
+        }
+
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        /**
+         * @return size of the file as reported by the server, or -1 if unknown
+         */
+        public long getContentLength() {
+            return contentLength;
+        }
+    }
+
+    /**
+     * Accumulated numbers over all downloads of a manager
+     */
+    public static class Metrics {
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder transferNanos = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAdder connections = new LongAdder();
+
+        private void recordLatency(long nanos) {
+            latencyNanos.add(nanos);
+            connections.increment();
+        }
+
+        public long getCompletedDownloads() {
+            return completed.sum();
+        }
+
+        public long getFailedDownloads() {
+            return failed.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * @return average throughput of a single download in bytes per second
+         */
+        public double getBytesPerSecond() {
+            long nanos = transferNanos.sum();
+            return nanos == 0 ? 0 : bytes.sum() * 1_000_000_000d / nanos;
+        }
+
+        /**
+         * @return average time until the response of a download started in milliseconds
+         */
+        public double getAverageLatencyMillis() {
+            long count = connections.sum();
+            return count == 0 ? 0 : latencyNanos.sum() / 1_000_000d / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d downloads (%d failed), %d bytes, %.0f bytes/s, %.1f ms latency",
+                    getCompletedDownloads(), getFailedDownloads(), getBytes(), getBytesPerSecond(), getAverageLatencyMillis());
+        }
+    }
+}
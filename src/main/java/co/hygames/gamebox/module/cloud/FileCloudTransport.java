@@ -0,0 +1,153 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transport that serves the API from a local directory, for offline tests and servers without internet access.
+ *
+ * A path is mapped to the file of the same name below the root directory, or to that name with '.json' appended.
+ * Queries are ignored, so a request for changed modules is answered with the complete catalog.
+ * Conditional requests by entity tag and ranged requests are answered like the API would.
+ *
+ * @author Niklas Eicker
+ */
+public class FileCloudTransport implements CloudTransport {
+    private static final int OK = 200;
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int NOT_MODIFIED = 304;
+    private static final int NOT_FOUND = 404;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
+    private final File root;
+
+    /**
+     * @param root directory containing the mirrored API
+     */
+    public FileCloudTransport(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public Response get(String path, Map<String, String> headers) throws IOException {
+        File file = resolve(path);
+        if (file == null) return new FileResponse(NOT_FOUND, null, 0, 0, new HashMap<>());
+        Map<String, String> responseHeaders = new HashMap<>();
+        String eTag = "\"" + Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length()) + "\"";
+        responseHeaders.put("etag", eTag);
+        responseHeaders.put("last-modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(file.lastModified()).atOffset(ZoneOffset.UTC)));
+        if (eTag.equals(headers.get("If-None-Match"))) return new FileResponse(NOT_MODIFIED, null, 0, 0, responseHeaders);
+        String range = headers.get("Range");
+        String ifRange = headers.get("If-Range");
+        // a range of a changed file is answered with the full file
+        boolean unchanged = ifRange == null || ifRange.equals(eTag) || ifRange.equals(responseHeaders.get("last-modified"));
+        if (unchanged && range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+            long from;
+            try {
+                from = Long.parseLong(range.substring("bytes=".length(), range.length() - 1));
+            } catch (NumberFormatException e) {
+                from = 0;
+            }
+            if (from >= file.length()) return new FileResponse(RANGE_NOT_SATISFIABLE, null, 0, 0, responseHeaders);
+            responseHeaders.put("content-range", "bytes " + from + "-" + (file.length() - 1) + "/" + file.length());
+            return new FileResponse(PARTIAL_CONTENT, file, from, file.length() - from, responseHeaders);
+        }
+        return new FileResponse(OK, file, 0, file.length(), responseHeaders);
+    }
+
+    private File resolve(String path) throws IOException {
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        File file = new File(root, path);
+        if (!file.isFile()) file = new File(root, path + ".json");
+        if (!file.isFile()) return null;
+        // do not serve anything outside of the root directory
+        if (!file.getCanonicalPath().startsWith(root.getCanonicalPath() + File.separator)) return null;
+        return file;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return root.toURI().toString();
+    }
+
+    private static class FileResponse implements Response {
+        private final int status;
+        private final File file;
+        private final long offset;
+        private final long length;
+        private final Map<String, String> headers;
+        private InputStream body;
+
+        private FileResponse(int status, File file, long offset, long length, Map<String, String> headers) {
+            this.status = status;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.headers = headers;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                if (file == null) {
+                    body = new ByteArrayInputStream(new byte[0]);
+                } else {
+                    body = new FileInputStream(file);
+                    if (body.skip(offset) != offset) {
+                        body.close();
+                        throw new FileNotFoundException("'" + file.getName() + "' changed while reading");
+                    }
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) body.close();
+        }
+    }
+}
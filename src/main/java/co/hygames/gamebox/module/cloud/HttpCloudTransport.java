@@ -0,0 +1,143 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import co.hygames.gamebox.module.settings.ModulesSettings.CloudSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Transport over HTTP(S) with connect and read timeouts and gzip compressed responses.
+ *
+ * Connections are kept alive and reused by the JDK connection cache, as long as every response is closed.
+ * Ranged requests are sent without compression, so that the offsets refer to the file itself.
+ *
+ * @author Niklas Eicker
+ */
+public class HttpCloudTransport implements CloudTransport {
+    public static final String DEFAULT_BASE_URL = CloudSettings.DEFAULT_BASE_URL;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = CloudSettings.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = CloudSettings.DEFAULT_READ_TIMEOUT_MILLIS;
+    private static final String USER_AGENT = "GameBox";
+
+    private final String baseUrl;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final String endpoint;
+
+    public HttpCloudTransport() {
+        this(DEFAULT_BASE_URL);
+    }
+
+    public HttpCloudTransport(String baseUrl) {
+        this(baseUrl, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param baseUrl              base of the API, ending with a slash
+     * @param connectTimeoutMillis time to wait for a connection
+     * @param readTimeoutMillis    time to wait for data on an open connection
+     */
+    public HttpCloudTransport(String baseUrl, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        try {
+            URL url = new URL(this.baseUrl);
+            this.endpoint = url.getProtocol() + "://" + url.getAuthority();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid API base URL '" + baseUrl + "'", e);
+        }
+    }
+
+    @Override
+    public Response get(String path, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestProperty("User-Agent", USER_AGENT);
+        if (!headers.containsKey("Range")) connection.setRequestProperty("Accept-Encoding", "gzip");
+        headers.forEach(connection::setRequestProperty);
+        return new HttpResponse(connection, connection.getResponseCode());
+    }
+
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    private static class HttpResponse implements Response {
+        private final HttpURLConnection connection;
+        private final int status;
+        private final boolean gzip;
+        private InputStream body;
+
+        private HttpResponse(HttpURLConnection connection, int status) {
+            this.connection = connection;
+            this.status = status;
+            this.gzip = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                InputStream raw = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                if (raw == null) raw = new ByteArrayInputStream(new byte[0]);
+                body = gzip ? new GZIPInputStream(raw) : raw;
+            }
+            return body;
+        }
+
+        @Override
+        public long getContentLength() {
+            return gzip ? -1 : connection.getContentLengthLong();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // closing the stream, instead of disconnecting, hands the connection back to the keep-alive cache
+            if (body != null) {
+                body.close();
+            } else {
+                InputStream raw = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                if (raw != null) raw.close();
+            }
+        }
+    }
+}
@@ -61,6 +61,13 @@ public class CloudModuleData implements ModuleBasicData, Serializable {
     @Expose
     private List<VersionData> versions = null;
 
+    /**
+     * Set for tombstones of removed modules in incremental catalog updates
+     */
+    @SerializedName("deleted")
+    @Expose
+    private Boolean deleted;
+
     private final static long serialVersionUID = 4719087577866667965L;
 
     public CloudModuleData() {
@@ -169,4 +176,17 @@ public class CloudModuleData implements ModuleBasicData, Serializable {
         this.latestVersion = latestVersion;
         return this;
     }
+
+    public boolean isDeleted() {
+        return Boolean.TRUE.equals(deleted);
+    }
+
+    public void setDeleted(Boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public CloudModuleData withDeleted(Boolean deleted) {
+        this.deleted = deleted;
+        return this;
+    }
 }
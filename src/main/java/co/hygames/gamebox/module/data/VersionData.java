@@ -45,6 +45,13 @@ public class VersionData implements Serializable, VersionedModuleData {
     @Expose
     private List<String> releaseNotes = null;
 
+    /**
+     * Lowercase hex SHA-256 of the module jar
+     */
+    @SerializedName("checksum")
+    @Expose
+    private String checksum;
+
     private final static long serialVersionUID = -2433806999627043447L;
 
     public VersionData() {
@@ -101,4 +108,17 @@ public class VersionData implements Serializable, VersionedModuleData {
         this.version = version;
         return this;
     }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public VersionData withChecksum(String checksum) {
+        this.checksum = checksum;
+        return this;
+    }
 }
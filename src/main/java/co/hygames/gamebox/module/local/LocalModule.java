@@ -21,6 +21,7 @@ package co.hygames.gamebox.module.local;
 import co.hygames.gamebox.exceptions.module.InvalidModuleException;
 import co.hygames.gamebox.module.GameBoxModule;
 import co.hygames.gamebox.module.data.*;
+import co.hygames.gamebox.utilities.ClassFileUtility;
 import co.hygames.gamebox.utilities.FileUtility;
 import co.hygames.gamebox.utilities.GameBoxYmlBuilder;
 import co.hygames.gamebox.utilities.ModuleUtility;
@@ -30,10 +31,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
@@ -41,7 +40,10 @@ import java.util.zip.ZipEntry;
  * @author Niklas Eicker
  */
 public class LocalModule extends VersionedModule {
-    private static final Yaml YAML = GameBoxYmlBuilder.buildLocalModuleDataYml();
+    public static final String MANIFEST_ENTRY_POINT = "Main-Module";
+    private static final String MODULE_BASE_CLASS = GameBoxModule.class.getName().replace('.', '/');
+    // Yaml instances are not thread safe, but modules are read from their jars in parallel
+    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(GameBoxYmlBuilder::buildLocalModuleDataYml);
     private String moduleId;
     private String name;
     private String description;
@@ -49,6 +51,8 @@ public class LocalModule extends VersionedModule {
     private List<String> authors;
     private VersionData versionData;
     private File moduleJar;
+    private String entryPoint;
+    private List<String> languageFiles = Collections.emptyList();
 
     // These sets are filled with dependencies and dependent modules during loading
     //    soft dependencies will be listed if they are loaded
@@ -83,28 +87,97 @@ public class LocalModule extends VersionedModule {
         return instance.fillInfo(moduleData);
     }**/
 
+    /**
+     * Read a module from its jar.
+     *
+     * The jar is only scanned once. The class extending {@link GameBoxModule} is either taken from the 'main'
+     * entry in module.yml, the 'Main-Module' attribute of the manifest, or found by reading the headers of all
+     * classes in the jar. No class is loaded during this process.
+     *
+     * @param jar the module jar
+     * @return the local module
+     * @throws InvalidModuleException if the jar does not contain a valid module
+     */
     public static LocalModule fromJar(File jar) throws InvalidModuleException {
-        JarFile jarFile;
-        LocalModule localModule = null;
-        try {
-            jarFile = new JarFile(jar);
+        LocalModuleData moduleData;
+        String entryPoint;
+        List<String> languageFiles = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(jar)) {
             ZipEntry moduleYml = jarFile.getEntry("module.yml");
             if (moduleYml == null) {
                 throw new InvalidModuleException("No 'module.yml' found for " + jar.getName());
             }
             InputStream moduleFile = jarFile.getInputStream(moduleYml);
-            LocalModuleData moduleData = YAML.loadAs(new InputStreamReader(moduleFile), LocalModuleData.class);
+            moduleData = YAML.get().loadAs(new InputStreamReader(moduleFile), LocalModuleData.class);
             ModuleUtility.validateLocalModuleData(moduleData);
             ModuleUtility.fillDefaults(moduleData);
-            jarFile.close();
-            localModule = new LocalModule(moduleData);
-            localModule.setModuleJar(jar);
+            entryPoint = scanJar(jarFile, moduleData, languageFiles);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new InvalidModuleException("Failed to read the jar " + jar.getName(), e);
         }
+        LocalModule localModule = new LocalModule(moduleData);
+        localModule.setModuleJar(jar, entryPoint, languageFiles);
         return localModule;
     }
 
+    /**
+     * Single pass over all jar entries collecting the default language files and, if needed, the class headers.
+     *
+     * @return the entry point of the module
+     */
+    private static String scanJar(JarFile jarFile, LocalModuleData moduleData, List<String> languageFiles) throws IOException, InvalidModuleException {
+        String declaredEntryPoint = moduleData.getMain();
+        if (declaredEntryPoint == null && jarFile.getManifest() != null) {
+            declaredEntryPoint = jarFile.getManifest().getMainAttributes().getValue(MANIFEST_ENTRY_POINT);
+        }
+        Map<String, ClassFileUtility.ClassHeader> classes = new HashMap<>();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (FileUtility.isLanguageFile(name)) {
+                languageFiles.add(name);
+                continue;
+            }
+            if (declaredEntryPoint != null || !name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                continue;
+            }
+            try (InputStream classFile = jarFile.getInputStream(entry)) {
+                ClassFileUtility.ClassHeader header = ClassFileUtility.readHeader(classFile);
+                classes.put(header.getName(), header);
+            }
+        }
+        if (declaredEntryPoint != null) {
+            if (jarFile.getEntry(declaredEntryPoint.replace('.', '/') + ".class") == null) {
+                throw new InvalidModuleException("The declared main class '" + declaredEntryPoint + "' of '" + moduleData.getName() + "' does not exist");
+            }
+            return declaredEntryPoint;
+        }
+        List<String> entryPoints = new ArrayList<>();
+        for (ClassFileUtility.ClassHeader header : classes.values()) {
+            if (header.isInstantiable() && extendsModuleBaseClass(header, classes)) {
+                entryPoints.add(header.getName().replace('/', '.'));
+            }
+        }
+        if (entryPoints.size() < 1) throw new InvalidModuleException("No class extending GameBoxModule was found in '" + moduleData.getName() + "'");
+        if (entryPoints.size() > 1) throw new InvalidModuleException("More then one class extending GameBoxModule was found in '" + moduleData.getName() + "'");
+        return entryPoints.get(0);
+    }
+
+    /**
+     * Follow the superclasses of the given class inside of the jar.
+     * Superclasses outside of the jar can only be the module base class itself, or classes from the JDK and other
+     * libraries that cannot be subclasses of the module base class.
+     */
+    private static boolean extendsModuleBaseClass(ClassFileUtility.ClassHeader header, Map<String, ClassFileUtility.ClassHeader> classes) {
+        // the depth limit protects against malicious class files with cyclic superclasses
+        for (int depth = 0; header != null && depth < classes.size(); depth++) {
+            if (MODULE_BASE_CLASS.equals(header.getSuperName())) return true;
+            header = classes.get(header.getSuperName());
+        }
+        return false;
+    }
+
     @Override
     public VersionData getVersionData() {
         return this.versionData;
@@ -114,11 +187,33 @@ public class LocalModule extends VersionedModule {
         return moduleJar;
     }
 
-    public void setModuleJar(File moduleJar) throws InvalidModuleException {
-        List<Class<?>> clazzes = FileUtility.getClassesFromJar(moduleJar, GameBoxModule.class);
-        if (clazzes.size() < 1) throw new InvalidModuleException("No class extending GameBoxModule was found in '" + getName() + "'");
-        if (clazzes.size() > 1) throw new InvalidModuleException("More then one class extending GameBoxModule was found in '" + getName() + "'");
+    /**
+     * @return fully qualified name of the class extending GameBoxModule in the module jar
+     */
+    public String getEntryPoint() {
+        return entryPoint;
+    }
+
+    /**
+     * @return names of the default language files inside the module jar
+     */
+    public List<String> getLanguageFiles() {
+        return languageFiles;
+    }
+
+    /**
+     * Point the module to its jar after the jar was moved
+     *
+     * @param moduleJar the new location of the jar
+     */
+    public void setModuleJar(File moduleJar) {
+        this.moduleJar = moduleJar;
+    }
+
+    void setModuleJar(File moduleJar, String entryPoint, List<String> languageFiles) {
         this.moduleJar = moduleJar;
+        this.entryPoint = entryPoint;
+        this.languageFiles = Collections.unmodifiableList(languageFiles);
     }
 
     public String getName() {
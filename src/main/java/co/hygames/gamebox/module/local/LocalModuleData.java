@@ -36,6 +36,7 @@ public class LocalModuleData implements ModuleBasicData, VersionedModuleData, Mo
     private List<String> releaseNotes = new ArrayList<>();
     private SemanticVersion version;
     private List<DependencyData> dependencies = new ArrayList<>();
+    private String main;
 
     private final static long serialVersionUID = 8241484990221433533L;
 
@@ -151,6 +152,22 @@ public class LocalModuleData implements ModuleBasicData, VersionedModuleData, Mo
         return this;
     }
 
+    /**
+     * @return fully qualified name of the class extending GameBoxModule or null if not declared
+     */
+    public String getMain() {
+        return main;
+    }
+
+    public void setMain(String main) {
+        this.main = main;
+    }
+
+    public LocalModuleData withMain(String main) {
+        this.main = main;
+        return this;
+    }
+
     @Override
     public List<String> getReleaseNotes() {
         return this.releaseNotes;
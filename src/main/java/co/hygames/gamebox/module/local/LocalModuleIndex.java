@@ -0,0 +1,300 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.local;
+
+import co.hygames.gamebox.exceptions.module.InvalidModuleException;
+import co.hygames.gamebox.module.data.DependencyData;
+import co.hygames.gamebox.module.data.VersionData;
+import co.hygames.gamebox.utilities.FileUtility;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
+
+import java.io.*;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent index of the modules in the modules directory.
+ *
+ * For every jar the parsed module data, the entry point and the default language files are cached together
+ * with a fingerprint of the jar (size, last modification and SHA-256 hash). As long as the fingerprint
+ * matches, a module can be restored from the index without opening its jar.
+ *
+ * @author Niklas Eicker
+ */
+public class LocalModuleIndex {
+    public static final String FILE_NAME = ".modules.index";
+    private static final int MAGIC = 0x47424D49;
+    private static final int FORMAT_VERSION = 1;
+
+    private final File indexFile;
+    private final Map<String, IndexEntry> entries = new ConcurrentHashMap<>();
+    private volatile boolean changed = false;
+
+    public LocalModuleIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Load the index from disk. A missing index file results in an empty index.
+     *
+     * @throws IOException if the index file cannot be read or is corrupt. The index is empty afterwards
+     */
+    public void load() throws IOException {
+        entries.clear();
+        changed = false;
+        if (!indexFile.isFile()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                // unknown format; it will simply be rebuilt
+                changed = true;
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                IndexEntry entry = readEntry(in);
+                entries.put(entry.path, entry);
+            }
+        } catch (IOException | ParseException | RuntimeException e) {
+            entries.clear();
+            changed = true;
+            throw new IOException("Corrupt module index " + indexFile.getName(), e);
+        }
+    }
+
+    /**
+     * Write the index to disk, if it changed since it was loaded
+     *
+     * @throws IOException if the index file cannot be written
+     */
+    public void save() throws IOException {
+        if (!changed) return;
+        File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            List<IndexEntry> toWrite = new ArrayList<>(entries.values());
+            out.writeInt(toWrite.size());
+            for (IndexEntry entry : toWrite) {
+                writeEntry(out, entry);
+            }
+        }
+        FileUtility.moveAtomically(tempFile, indexFile);
+        changed = false;
+    }
+
+    /**
+     * Get the module in the given jar. The jar is only read if it is not indexed yet, or changed.
+     * This method is thread safe.
+     *
+     * @param jar the module jar
+     * @return the module
+     * @throws InvalidModuleException if the jar has to be read and does not contain a valid module
+     */
+    public LocalModule getOrRead(File jar) throws InvalidModuleException {
+        LocalModule indexed = get(jar);
+        if (indexed != null) return indexed;
+        LocalModule localModule = LocalModule.fromJar(jar);
+        put(jar, localModule);
+        return localModule;
+    }
+
+    /**
+     * Get the module in the given jar from the index
+     *
+     * @param jar the module jar
+     * @return the indexed module, or null if the jar is not indexed or its fingerprint changed
+     */
+    public LocalModule get(File jar) {
+        IndexEntry entry = entries.get(jar.getAbsolutePath());
+        if (entry == null || jar.length() != entry.size) return null;
+        long lastModified = jar.lastModified();
+        if (lastModified != entry.lastModified) {
+            // the jar was touched; only its content decides whether the entry is still valid
+            try {
+                if (!FileUtility.sha256(jar).equals(entry.hash)) return null;
+            } catch (IOException e) {
+                return null;
+            }
+            entry.lastModified = lastModified;
+            changed = true;
+        }
+        LocalModule localModule = new LocalModule(entry.moduleData);
+        localModule.setModuleJar(jar, entry.entryPoint, new ArrayList<>(entry.languageFiles));
+        return localModule;
+    }
+
+    /**
+     * Get the SHA-256 of an indexed jar
+     *
+     * @param jar the module jar
+     * @return lowercase hex hash, or null if the jar is not indexed or its size changed
+     */
+    public String getHash(File jar) {
+        IndexEntry entry = entries.get(jar.getAbsolutePath());
+        if (entry == null || jar.length() != entry.size) return null;
+        return entry.hash;
+    }
+
+    /**
+     * Add or replace the index entry for a jar
+     *
+     * @param jar the module jar
+     * @param localModule the module read from the jar
+     */
+    public void put(File jar, LocalModule localModule) {
+        IndexEntry entry = new IndexEntry();
+        entry.path = jar.getAbsolutePath();
+        entry.size = jar.length();
+        entry.lastModified = jar.lastModified();
+        try {
+            entry.hash = FileUtility.sha256(jar);
+        } catch (IOException e) {
+            // not indexing the jar only costs a rescan on the next start
+            return;
+        }
+        entry.moduleData = toModuleData(localModule);
+        entry.entryPoint = localModule.getEntryPoint();
+        entry.languageFiles = new ArrayList<>(localModule.getLanguageFiles());
+        entries.put(entry.path, entry);
+        changed = true;
+    }
+
+    /**
+     * Remove all entries for jars that are not in the given collection
+     *
+     * @param jars jars that are still present
+     */
+    public void retain(Collection<File> jars) {
+        Set<String> paths = new HashSet<>();
+        for (File jar : jars) {
+            paths.add(jar.getAbsolutePath());
+        }
+        if (entries.keySet().retainAll(paths)) {
+            changed = true;
+        }
+    }
+
+    private static LocalModuleData toModuleData(LocalModule localModule) {
+        VersionData versionData = localModule.getVersionData();
+        LocalModuleData moduleData = new LocalModuleData()
+                .withId(localModule.getId())
+                .withName(localModule.getName())
+                .withDescription(localModule.getDescription())
+                .withSourceUrl(localModule.getSourceUrl())
+                .withAuthors(localModule.getAuthors())
+                .withVersion(versionData.getVersion())
+                .withDependencies(versionData.getDependencies());
+        if (versionData.getUpdatedAt() != null) moduleData.setUpdatedAt(versionData.getUpdatedAt());
+        if (versionData.getReleaseNotes() != null) moduleData.getReleaseNotes().addAll(versionData.getReleaseNotes());
+        return moduleData;
+    }
+
+    private static IndexEntry readEntry(DataInputStream in) throws IOException, ParseException {
+        IndexEntry entry = new IndexEntry();
+        entry.path = in.readUTF();
+        entry.size = in.readLong();
+        entry.lastModified = in.readLong();
+        entry.hash = in.readUTF();
+        entry.entryPoint = in.readUTF();
+        entry.languageFiles = readList(in);
+        LocalModuleData moduleData = new LocalModuleData()
+                .withId(in.readUTF())
+                .withName(readNullable(in))
+                .withDescription(readNullable(in))
+                .withSourceUrl(readNullable(in))
+                .withAuthors(readList(in))
+                .withUpdatedAt(in.readLong());
+        moduleData.getReleaseNotes().addAll(readList(in));
+        String version = readNullable(in);
+        moduleData.setVersion(version == null ? null : SemanticVersion.of(version));
+        int dependencies = in.readInt();
+        List<DependencyData> dependencyData = new ArrayList<>(dependencies);
+        for (int i = 0; i < dependencies; i++) {
+            dependencyData.add(new DependencyData()
+                    .withId(in.readUTF())
+                    .withVersionConstrain(readNullable(in))
+                    .withSoftDependency(in.readBoolean()));
+        }
+        moduleData.setDependencies(dependencyData);
+        entry.moduleData = moduleData;
+        return entry;
+    }
+
+    private static void writeEntry(DataOutputStream out, IndexEntry entry) throws IOException {
+        out.writeUTF(entry.path);
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        out.writeUTF(entry.hash);
+        out.writeUTF(entry.entryPoint);
+        writeList(out, entry.languageFiles);
+        LocalModuleData moduleData = entry.moduleData;
+        out.writeUTF(moduleData.getId());
+        writeNullable(out, moduleData.getName());
+        writeNullable(out, moduleData.getDescription());
+        writeNullable(out, moduleData.getSourceUrl());
+        writeList(out, moduleData.getAuthors());
+        out.writeLong(moduleData.getUpdatedAt());
+        writeList(out, moduleData.getReleaseNotes());
+        writeNullable(out, moduleData.getVersion() == null ? null : moduleData.getVersion().toString());
+        List<DependencyData> dependencies = moduleData.getDependencies() == null ? Collections.emptyList() : moduleData.getDependencies();
+        out.writeInt(dependencies.size());
+        for (DependencyData dependency : dependencies) {
+            out.writeUTF(dependency.getId());
+            writeNullable(out, dependency.getVersionConstrain());
+            out.writeBoolean(dependency.isSoftDependency());
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(in.readUTF());
+        }
+        return list;
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        if (list == null) list = Collections.emptyList();
+        out.writeInt(list.size());
+        for (String value : list) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static class IndexEntry {
+        private String path;
+        private long size;
+        private volatile long lastModified;
+        private String hash;
+        private String entryPoint;
+        private List<String> languageFiles;
+        private LocalModuleData moduleData;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.local;
+
+import co.hygames.gamebox.exceptions.module.InvalidModuleException;
+import co.hygames.gamebox.utilities.FileUtility;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content addressed store for module jars.
+ *
+ * Every jar is stored once under 'store/&lt;first two hash characters&gt;/&lt;sha256&gt;.jar'. The active modules in the
+ * modules directory are hard links into the store, or copies if the file system does not support hard links.
+ * Equal jars thus share their bytes on disk and a version that was downloaded before never has to be downloaded again
+ * while it is still in the store.
+ *
+ * @author Niklas Eicker
+ */
+public class ModuleStore {
+    public static final String DIRECTORY_NAME = "store";
+    private static final String EXTENSION = ".jar";
+
+    private final File storeDir;
+
+    public ModuleStore(File modulesDir) {
+        this.storeDir = new File(modulesDir, DIRECTORY_NAME);
+    }
+
+    /**
+     * @param sha256 lowercase hex SHA-256 of a jar
+     * @return location of the jar in the store; the file does not need to exist
+     * @throws IllegalArgumentException if the hash is not 64 lowercase hex characters
+     */
+    public File getFile(String sha256) {
+        if (!isValidHash(sha256)) throw new IllegalArgumentException("Invalid SHA-256 hash '" + sha256 + "'");
+        return new File(new File(storeDir, sha256.substring(0, 2)), sha256 + EXTENSION);
+    }
+
+    public boolean contains(String sha256) {
+        return isValidHash(sha256) && getFile(sha256).isFile();
+    }
+
+    /**
+     * @param sha256 a hash from the catalog or a file name
+     * @return whether the hash consists of exactly 64 lowercase hex characters
+     */
+    public static boolean isValidHash(String sha256) {
+        if (sha256 == null || sha256.length() != 64) return false;
+        for (int i = 0; i < sha256.length(); i++) {
+            char c = sha256.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param stored a jar in the store
+     * @return the hash the jar is stored under
+     */
+    public static String getHash(File stored) {
+        return stored.getName().substring(0, stored.getName().length() - EXTENSION.length());
+    }
+
+    /**
+     * Make an active jar out of a stored one
+     *
+     * @param sha256 hash of the stored jar
+     * @param target active jar to create or replace
+     * @throws IOException if the hash is invalid, or the jar is not stored or cannot be linked
+     */
+    public void link(String sha256, File target) throws IOException {
+        if (!isValidHash(sha256)) throw new IOException("Invalid SHA-256 hash '" + sha256 + "'");
+        File stored = getFile(sha256);
+        if (!stored.isFile()) throw new IOException("The jar " + sha256 + " is not in the module store");
+        File temp = new File(target.getPath() + ".link");
+        Files.deleteIfExists(temp.toPath());
+        try {
+            Files.createLink(temp.toPath(), stored.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(stored.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        FileUtility.moveAtomically(temp, target);
+    }
+
+    /**
+     * Add an active jar to the store. If the same jar is stored already, the active jar is replaced by a link to it.
+     *
+     * @param jar    an active module jar
+     * @param sha256 hash of the jar
+     * @throws IOException if the hash is invalid or the jar cannot be stored
+     */
+    public void adopt(File jar, String sha256) throws IOException {
+        if (!isValidHash(sha256)) throw new IOException("Invalid SHA-256 hash '" + sha256 + "'");
+        File stored = getFile(sha256);
+        if (stored.isFile()) {
+            if (!Files.isSameFile(stored.toPath(), jar.toPath())) {
+                link(sha256, jar);
+            }
+            return;
+        }
+        File directory = stored.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create the directory " + directory);
+        }
+        File temp = new File(stored.getPath() + ".tmp");
+        Files.deleteIfExists(temp.toPath());
+        try {
+            Files.createLink(temp.toPath(), jar.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(jar.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        FileUtility.moveAtomically(temp, stored);
+    }
+
+    /**
+     * Delete all stored jars that are not in the given set of hashes
+     *
+     * @param referenced hashes of jars that are still in use
+     * @return the deleted jars
+     */
+    public List<File> collectGarbage(Collection<String> referenced) {
+        List<File> deleted = new ArrayList<>();
+        for (File stored : getStoredJars()) {
+            String hash = getHash(stored);
+            if (referenced.contains(hash)) continue;
+            if (stored.delete()) deleted.add(stored);
+        }
+        return deleted;
+    }
+
+    /**
+     * Delete all stored jars that are not in the given set of hashes, except for the newest versions of every module.
+     * Jars that do not contain a valid module are deleted as well.
+     *
+     * @param referenced       hashes of jars that are still in use
+     * @param moduleIndex      index to read the module versions of the stored jars from
+     * @param retainedVersions number of unreferenced versions to keep per module
+     * @return the deleted jars
+     */
+    public List<File> collectGarbage(Collection<String> referenced, LocalModuleIndex moduleIndex, int retainedVersions) {
+        Set<String> retained = new HashSet<>(referenced);
+        Map<String, List<File>> storedVersions = new HashMap<>();
+        Map<File, SemanticVersion> versions = new HashMap<>();
+        for (File stored : getStoredJars()) {
+            if (retained.contains(getHash(stored))) continue;
+            try {
+                LocalModule storedModule = moduleIndex.getOrRead(stored);
+                storedVersions.computeIfAbsent(storedModule.getId(), id -> new ArrayList<>()).add(stored);
+                versions.put(stored, storedModule.getVersionData().getVersion());
+            } catch (InvalidModuleException e) {
+                // not a module, the jar is removed
+            }
+        }
+        for (List<File> moduleJars : storedVersions.values()) {
+            moduleJars.sort(Comparator.comparing(versions::get, Comparator.reverseOrder()));
+            for (File kept : moduleJars.subList(0, Math.min(retainedVersions, moduleJars.size()))) {
+                retained.add(getHash(kept));
+            }
+        }
+        return collectGarbage(retained);
+    }
+
+    /**
+     * Check the stored jars and delete corrupt ones.
+     *
+     * The quick mode only checks that each jar starts with the zip signature. Otherwise every jar is hashed again
+     * and compared to its name.
+     *
+     * @param quick whether to skip hashing
+     * @return the deleted corrupt jars
+     */
+    public List<File> verify(boolean quick) {
+        List<File> corrupt = new ArrayList<>();
+        for (File stored : getStoredJars()) {
+            String hash = getHash(stored);
+            boolean valid;
+            try {
+                valid = quick ? hasZipSignature(stored) : hash.equals(FileUtility.sha256(stored));
+            } catch (IOException e) {
+                valid = false;
+            }
+            if (!valid && stored.delete()) corrupt.add(stored);
+        }
+        return corrupt;
+    }
+
+    private static boolean hasZipSignature(File file) throws IOException {
+        byte[] signature = new byte[4];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            if (in.read(signature) != 4) return false;
+        }
+        return signature[0] == 'P' && signature[1] == 'K' && signature[2] == 3 && signature[3] == 4;
+    }
+
+    /**
+     * @return all jars in the store
+     */
+    public List<File> getStoredJars() {
+        List<File> jars = new ArrayList<>();
+        File[] directories = storeDir.listFiles(File::isDirectory);
+        if (directories == null) return jars;
+        for (File directory : directories) {
+            File[] stored = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+            if (stored != null) jars.addAll(Arrays.asList(stored));
+        }
+        return jars;
+    }
+}
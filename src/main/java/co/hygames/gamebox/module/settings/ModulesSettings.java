@@ -22,8 +22,17 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class ModulesSettings {
+    public CloudSettings cloud = new CloudSettings();
     public Map<String, ModuleSettings> modules = new HashMap<>();
 
+    public CloudSettings getCloud() {
+        return cloud;
+    }
+
+    public void setCloud(CloudSettings cloud) {
+        this.cloud = cloud;
+    }
+
     public Map<String, ModuleSettings> getModules() {
         return modules;
     }
@@ -32,6 +41,31 @@ public class ModulesSettings {
         this.modules = modules;
     }
 
+    /**
+     * Connection to the GameBox API
+     */
+    public static class CloudSettings {
+        public static final String DEFAULT_BASE_URL = "https://api.hygames.co/gamebox/";
+        public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+        public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+
+        public String baseUrl = DEFAULT_BASE_URL;
+        public int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        public int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public int getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        public int getReadTimeoutMillis() {
+            return readTimeoutMillis;
+        }
+    }
+
     public static class ModuleSettings {
         public boolean enabled = true;
         public boolean autoUpdate = true;
@@ -21,12 +21,16 @@ package co.hygames.gamebox.player;
 import co.hygames.gamebox.module.GameBoxModule;
 import co.hygames.gamebox.utilities.Permission;
 
+import java.util.Locale;
+
 /**
  * @author Niklas Eicker
  *
  * GameBox player
  */
 public class GbPlayer {
+    private Locale locale;
+
     public boolean hasPermission(Permission permission) {
         return permission.assignedTo(this);
     }
@@ -34,4 +38,15 @@ public class GbPlayer {
     public boolean hasPermissionForModule(Permission permission, GameBoxModule module) {
         return permission.assignedForModule(this, module);
     }
+
+    /**
+     * @return the locale messages are sent in, or null for the language of the server
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public void setLocale(Locale locale) {
+        this.locale = locale;
+    }
 }
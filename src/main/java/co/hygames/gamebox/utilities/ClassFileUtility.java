@@ -0,0 +1,157 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.utilities;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the header of compiled classes without loading them.
+ *
+ * Only the constant pool, the access flags and the names of the class and its superclass are read.
+ * This is enough to find classes extending a given base class in a jar, without defining every
+ * single class in a class loader.
+ *
+ * @author Niklas Eicker
+ */
+public class ClassFileUtility {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    /**
+     * Read the header of a class file
+     *
+     * @param classFile stream positioned at the start of the class file. It is not closed by this method
+     * @return the header of the class
+     * @throws IOException if the stream cannot be read or does not contain a valid class file
+     */
+    public static ClassHeader readHeader(InputStream classFile) throws IOException {
+        DataInputStream in = new DataInputStream(classFile);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+        int poolSize = in.readUnsignedShort();
+        String[] utf8 = new String[poolSize];
+        int[] classNameIndex = new int[poolSize];
+        for (int i = 1; i < poolSize; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndex[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    i++; // 8 byte constants take up two entries in the pool
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + " at index " + i);
+            }
+        }
+        int accessFlags = in.readUnsignedShort();
+        String name = resolveClassName(utf8, classNameIndex, in.readUnsignedShort());
+        String superName = resolveClassName(utf8, classNameIndex, in.readUnsignedShort());
+        if (name == null) {
+            throw new IOException("Class file without a name");
+        }
+        return new ClassHeader(name, superName, accessFlags);
+    }
+
+    private static String resolveClassName(String[] utf8, int[] classNameIndex, int poolIndex) throws IOException {
+        if (poolIndex == 0) return null; // only java.lang.Object has no superclass
+        if (poolIndex >= classNameIndex.length || classNameIndex[poolIndex] == 0) {
+            throw new IOException("Invalid class reference in the constant pool");
+        }
+        return utf8[classNameIndex[poolIndex]];
+    }
+
+    /**
+     * Header information of a class file. Class names are in their internal form, e.g. 'java/lang/Object'
+     */
+    public static class ClassHeader {
+        private final String name;
+        private final String superName;
+        private final int accessFlags;
+
+        ClassHeader(String name, String superName, int accessFlags) {
+            this.name = name;
+            this.superName = superName;
+            this.accessFlags = accessFlags;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSuperName() {
+            return superName;
+        }
+
+        /**
+         * @return true if the class is neither abstract nor an interface
+         */
+        public boolean isInstantiable() {
+            return (accessFlags & (ACC_ABSTRACT | ACC_INTERFACE)) == 0;
+        }
+    }
+}
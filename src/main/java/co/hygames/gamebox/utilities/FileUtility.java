@@ -24,13 +24,17 @@ import co.hygames.gamebox.module.local.LocalModule;
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
 
 /**
  * @author Niklas Eicker
@@ -47,11 +51,30 @@ public class FileUtility {
         }
     }
 
+    /**
+     * Copy the default language files of a module to its language folder.
+     *
+     * The language files in the jar are known from scanning the module. The jar is
+     * only opened if at least one of them is missing in the language folder.
+     */
     public static void copyDefaultLanguageFiles(GameBoxModule module, LocalModule localModule) {
-        try {
-            String jarFile = URLDecoder.decode(localModule.getModuleJar().getAbsolutePath(), "UTF-8");
-            copyDefaultLanguageFiles(jarFile, module.getLanguageFolder());
-        } catch (UnsupportedEncodingException e) {
+        File languageFolder = module.getLanguageFolder();
+        List<String> missingFiles = new ArrayList<>();
+        for (String languageFile : localModule.getLanguageFiles()) {
+            if (!new File(languageFolder, getFileName(languageFile)).exists()) {
+                missingFiles.add(languageFile);
+            }
+        }
+        if (missingFiles.isEmpty()) return;
+        try (JarFile jar = new JarFile(localModule.getModuleJar())) {
+            for (String languageFile : missingFiles) {
+                JarEntry entry = jar.getJarEntry(languageFile);
+                if (entry == null) continue;
+                File file = new File(languageFolder, getFileName(languageFile));
+                file.getParentFile().mkdirs();
+                streamToFile(jar.getInputStream(entry), file);
+            }
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
@@ -68,12 +91,8 @@ public class FileUtility {
             JarFile jar = new JarFile(jarFile);
             for (Enumeration list = jar.entries(); list.hasMoreElements(); ) {
                 JarEntry entry = (JarEntry) list.nextElement();
-                if (entry.getName().split("/")[0].equals("language")) {
-                    String[] pathParts = entry.getName().split("/");
-                    if (pathParts.length < 2 || (!entry.getName().endsWith(".yml") && !entry.getName().endsWith(".yaml"))) {
-                        continue;
-                    }
-                    File file = new File(languageFolder, pathParts[pathParts.length - 1]);
+                if (isLanguageFile(entry.getName())) {
+                    File file = new File(languageFolder, getFileName(entry.getName()));
                     if (!file.exists()) {
                         file.getParentFile().mkdirs();
                         streamToFile(jar.getInputStream(entry), file);
@@ -87,106 +106,81 @@ public class FileUtility {
     }
 
     /**
-     * Collect all classes of the given type in the provided subfolder of the GameBox folder
+     * Check whether the given jar entry is a default language file
      *
-     * @param folder to check for classes
-     * @param type classes checked for
-     * @return list of found classes
+     * @param entryName name of the jar entry
+     * @return true for .yml files inside of the language folder
      */
-    public static List<Class<?>> getClasses(File folder, Class<?> type) {
-        return getClasses(folder, null, type);
+    public static boolean isLanguageFile(String entryName) {
+        String[] pathParts = entryName.split("/");
+        return pathParts.length >= 2 && pathParts[0].equals("language")
+                && (entryName.endsWith(".yml") || entryName.endsWith(".yaml"));
+    }
+
+    private static String getFileName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+
+    private static void streamToFile(InputStream initialStream, File targetFile) throws IOException {
+        byte[] buffer = new byte[initialStream.available()];
+        initialStream.read(buffer);
+        OutputStream outStream = new FileOutputStream(targetFile);
+        outStream.write(buffer);
     }
 
     /**
-     * Collect all classes of type `type` in the jar file with the provided name
-     * in the given subfolder of the GameBox folder
+     * Calculate the SHA-256 hash of a file
      *
-     * @param folder to check for classes
-     * @param fileName look for jar with specific name
-     * @param type classes checked for
-     * @return list of found classes
+     * @param file to hash
+     * @return lowercase hex representation of the hash
+     * @throws IOException if the file cannot be read
      */
-    public static List<Class<?>> getClasses(File folder, String fileName, Class<?> type) {
-        List<Class<?>> list = new ArrayList<>();
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest;
         try {
-            if (!folder.exists()) {
-                return list;
-            }
-            FilenameFilter fileNameFilter = (dir, name) -> {
-                if (fileName != null) {
-                    return name.endsWith(".jar") && name.replace(".jar", "")
-                            .equalsIgnoreCase(fileName.replace(".jar", ""));
-                }
-                return name.endsWith(".jar");
-            };
-            File[] jars = folder.listFiles(fileNameFilter);
-            if (jars == null) {
-                return list;
-            }
-            for (File jar : jars) {
-                list = gather(jar.toURI().toURL(), list, type);
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
             }
-            return list;
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
         }
-        return null;
+        return toHex(digest.digest());
     }
 
-    private static List<Class<?>> gather(URL jar, List<Class<?>> list, Class<?> clazz) {
-        if (list == null) {
-            list = new ArrayList<>();
-        }
-        try (
-                URLClassLoader classLoader = new URLClassLoader(new URL[]{jar}, clazz.getClassLoader());
-                JarInputStream jarInputStream = new JarInputStream(jar.openStream())
-        ) {
-            while (true) {
-                JarEntry jarEntry = jarInputStream.getNextJarEntry();
-                if (jarEntry == null) {
-                    break;
-                }
-                String name = jarEntry.getName();
-                if (name == null || name.isEmpty()) {
-                    continue;
-                }
-                if (name.endsWith(".class")) {
-                    name = name.replace("/", ".");
-                    String className = name.substring(0, name.lastIndexOf(".class"));
-                    Class<?> jarEntryClass = classLoader.loadClass(className);
-                    if (clazz.isAssignableFrom(jarEntryClass)) {
-                        list.add(jarEntryClass);
-                    }
-                }
-            }
-        } catch (ClassNotFoundException | IOException e) {
-            e.printStackTrace();
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
         }
-        return list;
+        return hex.toString();
     }
 
-    public static List<Class<?>> getClassesFromJar(File jar, Class<?> clazz) {
-        URL url = null;
+    /**
+     * Move a file, replacing the target. The move is atomic if the file system supports it.
+     *
+     * @param source file to move
+     * @param target new location
+     * @throws IOException if the file cannot be moved
+     */
+    public static void moveAtomically(File source, File target) throws IOException {
         try {
-            url = jar.toURI().toURL();
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
-        return gather(url, null, clazz);
-    }
-
-    private static void streamToFile(InputStream initialStream, File targetFile) throws IOException {
-        byte[] buffer = new byte[initialStream.available()];
-        initialStream.read(buffer);
-        OutputStream outStream = new FileOutputStream(targetFile);
-        outStream.write(buffer);
     }
 
     public static List<File> getAllJars(File folder) {
         if (!folder.exists()) {
             return new ArrayList<>();
         }
-        FilenameFilter fileNameFilter = (dir, name) -> name.endsWith(".jar");
+        // the module store lives in a sub directory, so only active jars are listed
+        FilenameFilter fileNameFilter = (dir, name) -> name.endsWith(".jar") && new File(dir, name).isFile();
         return Arrays.asList(folder.listFiles(fileNameFilter));
     }
 
@@ -19,15 +19,47 @@
 package co.hygames.gamebox.utilities;
 
 import co.hygames.gamebox.module.local.LocalModuleData;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
 import org.yaml.snakeyaml.representer.Representer;
 
+import java.text.ParseException;
+
 public class GameBoxYmlBuilder {
     public static Yaml buildLocalModuleDataYml() {
-        Constructor constructor = new Constructor(LocalModuleData.class);
+        Constructor constructor = new GameBoxConstructor(LocalModuleData.class);
         Representer representer = new Representer();
         representer.getPropertyUtils().setSkipMissingProperties(true);
         return new Yaml(constructor, representer);
     }
+
+    /**
+     * Constructor that uses the interned {@link SemanticVersion} instances instead of creating one per scalar
+     */
+    private static class GameBoxConstructor extends Constructor {
+        private GameBoxConstructor(Class<?> root) {
+            super(root);
+            this.yamlClassConstructors.put(NodeId.scalar, new ConstructVersion());
+        }
+
+        private class ConstructVersion extends ConstructScalar {
+            @Override
+            public Object construct(Node node) {
+                if (node.getType() != SemanticVersion.class) {
+                    return super.construct(node);
+                }
+                String version = ((ScalarNode) node).getValue();
+                try {
+                    return SemanticVersion.of(version);
+                } catch (ParseException | ArrayIndexOutOfBoundsException e) {
+                    throw new YAMLException("Failed to parse '" + version + "' to SemanticVersion", e);
+                }
+            }
+        }
+    }
 }
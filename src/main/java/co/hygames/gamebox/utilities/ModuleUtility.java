@@ -18,13 +18,16 @@
 
 package co.hygames.gamebox.utilities;
 
+import co.hygames.gamebox.GameBox;
 import co.hygames.gamebox.GameBoxSettings;
 import co.hygames.gamebox.exceptions.module.InvalidModuleException;
+import co.hygames.gamebox.exceptions.module.ModuleDependencyCycleException;
 import co.hygames.gamebox.module.data.DependencyData;
 import co.hygames.gamebox.module.local.LocalModuleData;
 import co.hygames.gamebox.module.local.VersionedModule;
 import co.hygames.gamebox.module.local.LocalModule;
-import co.hygames.gamebox.utilities.versioning.VersionRangeUtility;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
+import co.hygames.gamebox.utilities.versioning.VersionConstraint;
 
 import java.text.ParseException;
 import java.util.*;
@@ -43,93 +46,192 @@ public class ModuleUtility {
         }
     }
 
-    public static List<LocalModule> sortModulesByDependencies(Collection<LocalModule> modules) {
-        List<LocalModule> sortedModules = new ArrayList<>(modules);
-        sortedModules.sort((localModule1, localModule2) -> {
-            List<DependencyData> dependencyData1 = localModule1.getVersionData().getDependencies();
-            List<DependencyData> dependencyData2 = localModule2.getVersionData().getDependencies();
-            if (dependencyData1.isEmpty() && dependencyData2.isEmpty()) {
-                return 0;
-            }
-            if (dependencyData1.isEmpty()) {
-                return 1;
-            }
-            if (dependencyData2.isEmpty()) {
-                return -1;
-            }
-            if (dependencyData1.stream().anyMatch(dep -> dep.getId().equals(localModule2.getId()))) {
-                return -1;
+    /**
+     * Sort modules so that every module comes after its dependencies.
+     *
+     * Kahn's algorithm is used, so the sort runs in linear time in the number of modules and dependencies.
+     * Ready modules are taken first in, first out, so the result only depends on the order of the input:
+     * modules without dependencies come in input order, followed by their dependents in the order they became ready.
+     * Soft dependencies are only considered if the dependency is part of the given modules. Dependencies
+     * outside of the given modules (e.g. GameBox itself) are ignored.
+     *
+     * @param modules the modules to sort
+     * @return sorted modules
+     * @throws ModuleDependencyCycleException if the modules depend on each other in a cycle
+     */
+    public static List<LocalModule> sortModulesByDependencies(Collection<LocalModule> modules) throws ModuleDependencyCycleException {
+        List<LocalModule> moduleList = new ArrayList<>(modules);
+        int size = moduleList.size();
+        Map<String, Integer> indices = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            indices.put(moduleList.get(i).getId(), i);
+        }
+        // dependents[i] holds the indices of all modules depending on module i
+        List<List<Integer>> dependents = new ArrayList<>(size);
+        int[] inDegree = new int[size];
+        for (int i = 0; i < size; i++) {
+            dependents.add(new ArrayList<>(0));
+        }
+        for (int i = 0; i < size; i++) {
+            for (DependencyData dependency : moduleList.get(i).getVersionData().getDependencies()) {
+                Integer dependencyIndex = indices.get(dependency.getId());
+                if (dependencyIndex == null) continue;
+                dependents.get(dependencyIndex).add(i);
+                inDegree[i]++;
             }
-            if (dependencyData2.stream().anyMatch(dep -> dep.getId().equals(localModule1.getId()))) {
-                return 1;
+        }
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < size; i++) {
+            if (inDegree[i] == 0) ready.add(i);
+        }
+        List<LocalModule> sortedModules = new ArrayList<>(size);
+        while (!ready.isEmpty()) {
+            int current = ready.poll();
+            sortedModules.add(moduleList.get(current));
+            for (int dependent : dependents.get(current)) {
+                if (--inDegree[dependent] == 0) ready.add(dependent);
             }
-            return 0;
-        });
+        }
+        if (sortedModules.size() < size) {
+            throw new ModuleDependencyCycleException(findCycle(moduleList, indices, inDegree));
+        }
         return sortedModules;
     }
 
+    /**
+     * Every module left with a positive in-degree after Kahn's algorithm has at least one dependency that is
+     * also left. Following those dependencies has to run into a cycle.
+     */
+    private static List<String> findCycle(List<LocalModule> modules, Map<String, Integer> indices, int[] inDegree) {
+        int current = 0;
+        while (inDegree[current] == 0) current++;
+        Map<Integer, Integer> positionInPath = new HashMap<>();
+        List<String> path = new ArrayList<>();
+        while (!positionInPath.containsKey(current)) {
+            positionInPath.put(current, path.size());
+            path.add(modules.get(current).getId());
+            for (DependencyData dependency : modules.get(current).getVersionData().getDependencies()) {
+                Integer dependencyIndex = indices.get(dependency.getId());
+                if (dependencyIndex != null && inDegree[dependencyIndex] > 0) {
+                    current = dependencyIndex;
+                    break;
+                }
+            }
+        }
+        List<String> cycle = new ArrayList<>(path.subList(positionInPath.get(current), path.size()));
+        // every module in the cycle depends on the next one
+        cycle.add(modules.get(current).getId());
+        return cycle;
+    }
+
+    /**
+     * Check the dependencies of all given modules against each other and the running GameBox version.
+     *
+     * @see #checkDependencies(Map, VersionedModule)
+     */
     public static DependencyReport checkDependencies(Map<String, LocalModule> modules) {
-        Map<String, VersionedModule> versionedModules = new HashMap<>(modules);
         VersionedModule gameBoxModule = GameBoxSettings.getGameBoxModuleInfo();
+        return checkDependencies(modules, gameBoxModule != null ? gameBoxModule : GameBox.versionInfo);
+    }
+
+    /**
+     * Check the dependencies of all given modules.
+     *
+     * Every dependency edge is evaluated exactly once. Modules with a missing or incompatible hard dependency are
+     * removed, and the removal is propagated to their dependents through an index of reverse dependencies.
+     * Soft dependencies never lead to the removal of a module.
+     *
+     * @param modules the modules to check
+     * @param gameBoxModule version info of GameBox, which modules can depend on like on any other module
+     * @return report about all removed modules and the reasons for their removal
+     */
+    public static DependencyReport checkDependencies(Map<String, LocalModule> modules, VersionedModule gameBoxModule) {
+        Map<String, VersionedModule> versionedModules = new HashMap<>(modules);
         versionedModules.put(gameBoxModule.getId(), gameBoxModule);
-        List<String> log = new ArrayList<>();
-        boolean foundIssue = true;
-        while (foundIssue && !versionedModules.isEmpty()) {
-            foundIssue = false;
-            Iterator<VersionedModule> versionedModule = versionedModules.values().iterator();
-            while (versionedModule.hasNext()) {
-                VersionedModule currentModule = versionedModule.next();
-                for (DependencyData dependencyData : currentModule.getVersionData().getDependencies()) {
-                    VersionedModule dependency = versionedModules.get(dependencyData.getId());
-                    if (dependency == null) {
-                        if (dependencyData.isSoftDependency()) {
-                            continue;
-                        }
-                        log.add("The dependency '" + dependencyData.getId()
-                                + "' is missing for the module '" + currentModule.getId() + "'");
-                        log.add("   " + currentModule.getId() + " asks for a version in the range '"
-                                + dependencyData.getVersionConstrain() + "'" );
-                        foundIssue = true;
-                        versionedModule.remove();
-                        break;
-                    }
-                    if (dependencyData.getVersionConstrain() == null || dependencyData.getVersionConstrain().isEmpty()) continue;
-                    try {
-                        if (!VersionRangeUtility.isInVersionRange(dependency.getVersionData().getVersion(), dependencyData.getVersionConstrain())) {
-                            if (dependencyData.isSoftDependency()) {
-                                continue;
-                            }
-                            log.add("'" + currentModule.getId() + "' asks for '"
-                                    + dependency.getId() + "' with the version constrain '"
-                                    + dependencyData.getVersionConstrain() + "'");
-                            log.add("   The installed version is '" + dependency.getVersionData().getVersion().toString() + "'" );
-                            foundIssue = true;
-                            versionedModule.remove();
-                            break;
-                        }
-                    } catch (ParseException e) {
-                        // can be ignored, since the version ranges are parsed before
-                    }
+        Map<String, List<VersionedModule>> hardDependents = new HashMap<>();
+        List<DependencyReport.Issue> issues = new ArrayList<>();
+        Set<String> removed = new LinkedHashSet<>();
+        Deque<String> worklist = new ArrayDeque<>();
+        for (VersionedModule module : versionedModules.values()) {
+            for (DependencyData dependencyData : module.getVersionData().getDependencies()) {
+                if (!dependencyData.isSoftDependency()) {
+                    hardDependents.computeIfAbsent(dependencyData.getId(), id -> new ArrayList<>()).add(module);
+                }
+                DependencyReport.Issue issue = checkDependency(module, dependencyData, versionedModules.get(dependencyData.getId()));
+                if (issue == null) continue;
+                if (removed.add(module.getId())) {
+                    issues.add(issue);
+                    worklist.add(module.getId());
                 }
             }
         }
-        return new DependencyReport(modules, versionedModules, log);
+        while (!worklist.isEmpty()) {
+            String removedModule = worklist.poll();
+            for (VersionedModule dependent : hardDependents.getOrDefault(removedModule, Collections.emptyList())) {
+                if (removed.add(dependent.getId())) {
+                    issues.add(new DependencyReport.Issue(dependent.getId(), removedModule, DependencyReport.Reason.DEPENDENCY_REMOVED,
+                            null, null));
+                    worklist.add(dependent.getId());
+                }
+            }
+        }
+        removed.retainAll(modules.keySet());
+        return new DependencyReport(issues, new ArrayList<>(removed));
+    }
+
+    private static DependencyReport.Issue checkDependency(VersionedModule module, DependencyData dependencyData, VersionedModule dependency) {
+        String constrain = dependencyData.getVersionConstrain();
+        if (dependency == null) {
+            if (dependencyData.isSoftDependency()) return null;
+            return new DependencyReport.Issue(module.getId(), dependencyData.getId(), DependencyReport.Reason.MISSING_DEPENDENCY, constrain, null);
+        }
+        if (constrain == null || constrain.isEmpty()) return null;
+        SemanticVersion installedVersion = dependency.getVersionData().getVersion();
+        try {
+            if (VersionConstraint.of(constrain).matches(installedVersion)) return null;
+        } catch (ParseException | IllegalArgumentException e) {
+            if (dependencyData.isSoftDependency()) return null;
+            return new DependencyReport.Issue(module.getId(), dependencyData.getId(), DependencyReport.Reason.INVALID_CONSTRAIN, constrain, installedVersion);
+        }
+        if (dependencyData.isSoftDependency()) return null;
+        return new DependencyReport.Issue(module.getId(), dependencyData.getId(), DependencyReport.Reason.VERSION_MISMATCH, constrain, installedVersion);
     }
 
     public static class DependencyReport {
-        private List<String> log;
-        private List<String> removedModules = new ArrayList<>();
-
-        public DependencyReport(Map<String, LocalModule> previous, Map<String, VersionedModule> afterwards, List<String> log) {
-            this.log = log;
-            for (String id : previous.keySet()) {
-                if (!afterwards.containsKey(id)) {
-                    this.removedModules.add(id);
-                }
-            }
+        public enum Reason {
+            // a hard dependency is not installed
+            MISSING_DEPENDENCY,
+            // the installed version of a hard dependency is outside of the version constrain
+            VERSION_MISMATCH,
+            // the version constrain of a hard dependency cannot be parsed
+            INVALID_CONSTRAIN,
+            // a hard dependency was removed because of its own dependency issues
+            DEPENDENCY_REMOVED
+        }
+
+        private final List<Issue> issues;
+        private final List<String> removedModules;
+
+        public DependencyReport(List<Issue> issues, List<String> removedModules) {
+            this.issues = Collections.unmodifiableList(issues);
+            this.removedModules = Collections.unmodifiableList(removedModules);
         }
 
+        /**
+         * @return the first issue found for every removed module
+         */
+        public List<Issue> getIssues() {
+            return issues;
+        }
+
+        /**
+         * @return human readable description of all issues
+         */
         public List<String> getLog() {
+            List<String> log = new ArrayList<>();
+            for (Issue issue : issues) {
+                log.addAll(issue.describe());
+            }
             return log;
         }
 
@@ -140,5 +242,67 @@ public class ModuleUtility {
         public boolean isOk() {
             return removedModules.isEmpty();
         }
+
+        public static class Issue {
+            private final String moduleId;
+            private final String dependencyId;
+            private final Reason reason;
+            private final String versionConstrain;
+            private final SemanticVersion installedVersion;
+
+            public Issue(String moduleId, String dependencyId, Reason reason, String versionConstrain, SemanticVersion installedVersion) {
+                this.moduleId = moduleId;
+                this.dependencyId = dependencyId;
+                this.reason = reason;
+                this.versionConstrain = versionConstrain;
+                this.installedVersion = installedVersion;
+            }
+
+            public String getModuleId() {
+                return moduleId;
+            }
+
+            public String getDependencyId() {
+                return dependencyId;
+            }
+
+            public Reason getReason() {
+                return reason;
+            }
+
+            /**
+             * @return the version constrain of the dependency or null
+             */
+            public String getVersionConstrain() {
+                return versionConstrain;
+            }
+
+            /**
+             * @return the installed version of the dependency or null if it is not installed
+             */
+            public SemanticVersion getInstalledVersion() {
+                return installedVersion;
+            }
+
+            private List<String> describe() {
+                switch (reason) {
+                    case MISSING_DEPENDENCY:
+                        return Arrays.asList("The dependency '" + dependencyId + "' is missing for the module '" + moduleId + "'",
+                                "   " + moduleId + " asks for a version in the range '" + versionConstrain + "'");
+                    case VERSION_MISMATCH:
+                        return Arrays.asList("'" + moduleId + "' asks for '" + dependencyId + "' with the version constrain '" + versionConstrain + "'",
+                                "   The installed version is '" + installedVersion + "'");
+                    case INVALID_CONSTRAIN:
+                        return Collections.singletonList("'" + moduleId + "' has the invalid version constrain '" + versionConstrain + "' for '" + dependencyId + "'");
+                    default:
+                        return Collections.singletonList("The module '" + moduleId + "' depends on the removed module '" + dependencyId + "'");
+                }
+            }
+
+            @Override
+            public String toString() {
+                return reason + ": " + moduleId + " -> " + dependencyId;
+            }
+        }
     }
 }
@@ -0,0 +1,57 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.utilities;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Niklas Eicker
+ */
+public class ThreadUtility {
+
+    /**
+     * Create a thread factory for named daemon threads.
+     *
+     * The threads are numbered in the order of creation, e.g. 'GameBox-module-discovery-3'.
+     * Daemon threads are used, so that a stuck worker can never keep the server from shutting down.
+     *
+     * @param name base name of the created threads
+     * @return the thread factory
+     */
+    public static ThreadFactory namedDaemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "GameBox-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Number of threads to use for a parallel task with the given amount of jobs.
+     * This is bound by the available processors and never smaller than one.
+     *
+     * @param jobs number of jobs that could run in parallel
+     * @return number of threads to use
+     */
+    public static int boundedParallelism(int jobs) {
+        return Math.max(1, Math.min(jobs, Runtime.getRuntime().availableProcessors()));
+    }
+}
@@ -18,8 +18,11 @@
 
 package co.hygames.gamebox.utilities.versioning;
 
+import java.lang.ref.WeakReference;
 import java.text.ParseException;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -28,6 +31,17 @@ import java.util.regex.Pattern;
  */
 public class SemanticVersion implements Comparable<SemanticVersion> {
 
+	private static final Pattern IDENTIFIER = Pattern.compile("[0-9A-Za-z-]+");
+	private static final String[] NO_IDENTIFIERS = new String[0];
+	private static final long[] NO_NUMBERS = new long[0];
+	private static final long NOT_NUMERIC = Long.MIN_VALUE;
+
+	/**
+	 * Pool of interned versions keyed by their canonical string. The key is the cached string of the pooled version,
+	 * so an entry lives exactly as long as its version is referenced somewhere else.
+	 */
+	private static final Map<String, WeakReference<SemanticVersion>> POOL = new WeakHashMap<>();
+
 	/**
 	 * Major version number
 	 */
@@ -53,6 +67,21 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
 	 */
 	public final String[] buildMeta;
 
+	/**
+	 * Numeric value of each pre-release tag or {@link #NOT_NUMERIC}, classified once on construction
+	 */
+	private final long[] preReleaseNumbers;
+
+	/**
+	 * Lazily computed hash code, 0 if not computed yet
+	 */
+	private int hash;
+
+	/**
+	 * Lazily computed canonical string
+	 */
+	private String string;
+
 	/**
 	 * Construct a new plain version object
 	 * 
@@ -64,7 +93,7 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
 	 *          patchlevel. Must not be negative.
 	 */
 	public SemanticVersion(int major, int minor, int patch) {
-		this(major, minor, patch, new String[0], new String[0]);
+		this(major, minor, patch, NO_IDENTIFIERS, NO_IDENTIFIERS);
 	}
 
 	/**
@@ -88,25 +117,23 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
 		if (major < 0 || minor < 0 || patch < 0) {
 			throw new IllegalArgumentException("Versionnumbers must be positive!");
 		}
-		this.buildMeta = new String[buildMeta.length];
-		this.preRelase = new String[preRelease.length];
-		Pattern p = Pattern.compile("[0-9A-Za-z-]+");
 		for (int i = 0; i < preRelease.length; i++) {
-			if (preRelease[i] == null || !p.matcher(preRelease[i]).matches()) {
+			if (preRelease[i] == null || !IDENTIFIER.matcher(preRelease[i]).matches()) {
 				throw new IllegalArgumentException("Pre Release tag: " + i);
 			}
-			this.preRelase[i] = preRelease[i];
 		}
 		for (int i = 0; i < buildMeta.length; i++) {
-			if (buildMeta[i] == null || !p.matcher(buildMeta[i]).matches()) {
+			if (buildMeta[i] == null || !IDENTIFIER.matcher(buildMeta[i]).matches()) {
 				throw new IllegalArgumentException("Build Meta tag: " + i);
 			}
-			this.buildMeta[i] = buildMeta[i];
 		}
 
 		this.major = major;
 		this.minor = minor;
 		this.patch = patch;
+		this.preRelase = preRelease.length == 0 ? NO_IDENTIFIERS : preRelease.clone();
+		this.buildMeta = buildMeta.length == 0 ? NO_IDENTIFIERS : buildMeta.clone();
+		this.preReleaseNumbers = classifyPreRelease(this.preRelase);
 	}
 
 	/**
@@ -118,18 +145,95 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
 	 *           if the version string does not conform to the semver specs.
 	 */
 	public SemanticVersion(String version) throws ParseException {
-		vParts = new int[3];
-		preParts = new ArrayList<String>(5);
-		metaParts = new ArrayList<String>(5);
-		input = version.toCharArray();
-		if (!stateMajor()) { // Start recursive descend
-			throw new ParseException(version, errPos);
-		}
-		major = vParts[0];
-		minor = vParts[1];
-		patch = vParts[2];
-		preRelase = preParts.toArray(new String[preParts.size()]);
-		buildMeta = metaParts.toArray(new String[metaParts.size()]);
+		Parser parser = new Parser(version);
+		if (!parser.stateMajor()) { // Start recursive descend
+			throw new ParseException(version, parser.errPos);
+		}
+		major = parser.vParts[0];
+		minor = parser.vParts[1];
+		patch = parser.vParts[2];
+		preRelase = parser.preParts.toArray();
+		buildMeta = parser.metaParts.toArray();
+		preReleaseNumbers = classifyPreRelease(preRelase);
+	}
+
+	/**
+	 * Get the interned version for a string. Equal versions share one instance, so they can be compared by identity.
+	 * The tag arrays of interned versions are shared and must not be modified.
+	 *
+	 * @param version
+	 *          version in flat string format
+	 * @return the interned version
+	 * @throws ParseException
+	 *           if the version string does not conform to the semver specs.
+	 */
+	public static SemanticVersion of(String version) throws ParseException {
+		SemanticVersion pooled;
+		synchronized (POOL) {
+			pooled = get(version);
+		}
+		if (pooled != null) {
+			return pooled;
+		}
+		return intern(new SemanticVersion(version));
+	}
+
+	/**
+	 * Intern a version object
+	 *
+	 * @param version
+	 *          the version to intern
+	 * @return the pooled version equal to the given one
+	 * @see #of(String)
+	 */
+	public static SemanticVersion intern(SemanticVersion version) {
+		String key = version.toString();
+		synchronized (POOL) {
+			SemanticVersion pooled = get(key);
+			if (pooled != null) {
+				return pooled;
+			}
+			POOL.put(key, new WeakReference<>(version));
+			return version;
+		}
+	}
+
+	private static SemanticVersion get(String key) {
+		WeakReference<SemanticVersion> reference = POOL.get(key);
+		return reference == null ? null : reference.get();
+	}
+
+	/**
+	 * Pre-compute the numeric value of all pre-release tags, so that comparing versions does not have to parse them.
+	 * A tag counts as numeric if {@link Integer#parseInt(String)} would accept it.
+	 */
+	private static long[] classifyPreRelease(String[] preRelease) {
+		if (preRelease.length == 0) {
+			return NO_NUMBERS;
+		}
+		long[] numbers = new long[preRelease.length];
+		for (int i = 0; i < preRelease.length; i++) {
+			numbers[i] = parseInt(preRelease[i]);
+		}
+		return numbers;
+	}
+
+	private static long parseInt(String tag) {
+		boolean negative = tag.charAt(0) == '-';
+		int start = negative ? 1 : 0;
+		if (start == tag.length() || tag.length() - start > 10) {
+			return NOT_NUMERIC;
+		}
+		long value = 0;
+		for (int i = start; i < tag.length(); i++) {
+			char c = tag.charAt(i);
+			if (c < '0' || c > '9') {
+				return NOT_NUMERIC;
+			}
+			value = value * 10 + (c - '0');
+		}
+		value = negative ? -value : value;
+		return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? NOT_NUMERIC : value;
 	}
 
 	/**
@@ -138,6 +242,9 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
 	 * @return new SemanticVersion instance without meta data
 	 */
 	public SemanticVersion withoutMetaData() {
+		if (preRelase.length == 0 && buildMeta.length == 0) {
+			return this;
+		}
 		return new SemanticVersion(major, minor, patch);
 	}
 
@@ -207,7 +314,16 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
 
 	@Override
 	public String toString() {
-		StringBuilder ret = new StringBuilder();
+		String string = this.string;
+		if (string == null) {
+			string = buildString();
+			this.string = string;
+		}
+		return string;
+	}
+
+	private String buildString() {
+		StringBuilder ret = new StringBuilder(16);
 		ret.append(major);
 		ret.append('.');
 		ret.append(minor);
@@ -236,18 +352,26 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
 
 	@Override
 	public int hashCode() {
-		return toString().hashCode(); // Lazy
+		int h = hash;
+		if (h == 0) {
+			h = 31 * (31 * (31 * (31 * major + minor) + patch) + Arrays.hashCode(preRelase)) + Arrays.hashCode(buildMeta);
+			hash = h;
+		}
+		return h;
 	}
 
 	@Override
 	public boolean equals(Object other) {
-		if (this == other) {
+		if (this == other) { // Fast path for interned versions
 			return true;
 		}
 		if (!(other instanceof SemanticVersion)) {
 			return false;
 		}
 		SemanticVersion ov = (SemanticVersion) other;
+		if (hash != 0 && ov.hash != 0 && hash != ov.hash) {
+			return false;
+		}
 		if (ov.major != major || ov.minor != minor || ov.patch != patch) {
 			return false;
 		}
@@ -304,151 +428,196 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
 	}
 
 	private int comparePreReleaseTag(int pos, SemanticVersion ov) {
-		Integer here = null;
-		Integer there = null;
-		try {
-			here = Integer.parseInt(preRelase[pos], 10);
-		}
-		catch (NumberFormatException e) {
-		}
-		try {
-			there = Integer.parseInt(ov.preRelase[pos], 10);
-		}
-		catch (NumberFormatException e) {
-		}
-		if (here != null && there == null) {
+		long here = preReleaseNumbers[pos];
+		long there = ov.preReleaseNumbers[pos];
+		if (here != NOT_NUMERIC && there == NOT_NUMERIC) {
 			return -1; // Strings take precedence over numbers
 		}
-		if (here == null && there != null) {
+		if (here == NOT_NUMERIC && there != NOT_NUMERIC) {
 			return 1; // Strings take precedence over numbers
 		}
-		if (here == null && there == null) {
+		if (here == NOT_NUMERIC) {
 			return (preRelase[pos].compareTo(ov.preRelase[pos])); // ASCII compare
 		}
-		return here.compareTo(there); // Number compare
+		return Long.compare(here, there); // Number compare
 	}
 
 	// Parser implementation below
 
-	private int[] vParts;
-	private ArrayList<String> preParts, metaParts;
-	private int errPos;
-	private char[] input;
-
-	private boolean stateMajor() {
-		int pos = 0;
-		while (pos < input.length && input[pos] >= '0' && input[pos] <= '9') {
-			pos++; // match [0..9]+
+	/**
+	 * Scratch state of a single parse. It is dropped as soon as the version is constructed.
+	 */
+	private static final class Parser {
+		private final String input;
+		private final int[] vParts = new int[3];
+		private final Identifiers preParts = new Identifiers();
+		private final Identifiers metaParts = new Identifiers();
+		private int errPos;
+
+		private Parser(String input) {
+			this.input = input;
+		}
+
+		/**
+		 * Character at the given position. Reading past the end throws like the former char array based parser did.
+		 */
+		private char charAt(int pos) {
+			if (pos >= input.length()) {
+				throw new ArrayIndexOutOfBoundsException(pos);
+			}
+			return input.charAt(pos);
 		}
-		if (pos == 0) { // Empty String -> Error
-			return false;
+
+		private boolean isDigit(int pos) {
+			char c = input.charAt(pos);
+			return c >= '0' && c <= '9';
 		}
 
-		vParts[0] = Integer.parseInt(new String(input, 0, pos), 10);
+		private boolean isIdentifier(int pos) {
+			char c = input.charAt(pos);
+			return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-';
+		}
 
-		if (input[pos] == '.') {
-			return stateMinor(pos + 1);
+		private int parseNumber(int start, int end) {
+			int value = 0;
+			for (int i = start; i < end; i++) {
+				int digit = input.charAt(i) - '0';
+				if (value > (Integer.MAX_VALUE - digit) / 10) {
+					throw new NumberFormatException("For input string: \"" + input.substring(start, end) + "\"");
+				}
+				value = value * 10 + digit;
+			}
+			return value;
 		}
 
-		return false;
-	}
+		private boolean stateMajor() {
+			int pos = 0;
+			while (pos < input.length() && isDigit(pos)) {
+				pos++; // match [0..9]+
+			}
+			if (pos == 0) { // Empty String -> Error
+				return false;
+			}
+
+			vParts[0] = parseNumber(0, pos);
+
+			if (charAt(pos) == '.') {
+				return stateMinor(pos + 1);
+			}
 
-	private boolean stateMinor(int index) {
-		int pos = index;
-		while (pos < input.length && input[pos] >= '0' && input[pos] <= '9') {
-			pos++;// match [0..9]+
-		}
-		if (pos == index) { // Empty String -> Error
-			errPos = index;
 			return false;
 		}
-		vParts[1] = Integer.parseInt(new String(input, index, pos - index), 10);
 
-		if (input[pos] == '.') {
-			return statePatch(pos + 1);
-		}
+		private boolean stateMinor(int index) {
+			int pos = index;
+			while (pos < input.length() && isDigit(pos)) {
+				pos++;// match [0..9]+
+			}
+			if (pos == index) { // Empty String -> Error
+				errPos = index;
+				return false;
+			}
+			vParts[1] = parseNumber(index, pos);
 
-		errPos = pos;
-		return false;
-	}
+			if (charAt(pos) == '.') {
+				return statePatch(pos + 1);
+			}
 
-	private boolean statePatch(int index) {
-		int pos = index;
-		while (pos < input.length && input[pos] >= '0' && input[pos] <= '9') {
-			pos++; // match [0..9]+
-		}
-		if (pos == index) { // Empty String -> Error
-			errPos = index;
+			errPos = pos;
 			return false;
 		}
 
-		vParts[2] = Integer.parseInt(new String(input, index, pos - index), 10);
+		private boolean statePatch(int index) {
+			int pos = index;
+			while (pos < input.length() && isDigit(pos)) {
+				pos++; // match [0..9]+
+			}
+			if (pos == index) { // Empty String -> Error
+				errPos = index;
+				return false;
+			}
 
-		if (pos == input.length) { // We have a clean version string
-			return true;
-		}
+			vParts[2] = parseNumber(index, pos);
 
-		if (input[pos] == '+') { // We have build meta tags -> descend
-			return stateMeta(pos + 1);
-		}
+			if (pos == input.length()) { // We have a clean version string
+				return true;
+			}
 
-		if (input[pos] == '-') { // We have pre release tags -> descend
-			return stateRelease(pos + 1);
-		}
+			if (input.charAt(pos) == '+') { // We have build meta tags -> descend
+				return stateMeta(pos + 1);
+			}
 
-		errPos = pos; // We have junk
-		return false;
-	}
+			if (input.charAt(pos) == '-') { // We have pre release tags -> descend
+				return stateRelease(pos + 1);
+			}
 
-	private boolean stateRelease(int index) {
-		int pos = index;
-		while ((pos < input.length)
-				&& ((input[pos] >= '0' && input[pos] <= '9')
-						|| (input[pos] >= 'a' && input[pos] <= 'z')
-						|| (input[pos] >= 'A' && input[pos] <= 'Z') || input[pos] == '-')) {
-			pos++; // match [0..9a-zA-Z-]+
-		}
-		if (pos == index) { // Empty String -> Error
-			errPos = index;
+			errPos = pos; // We have junk
 			return false;
 		}
 
-		preParts.add(new String(input, index, pos - index));
-		if (pos == input.length) { // End of input
-			return true;
-		}
-		if (input[pos] == '.') { // More parts -> descend
-			return stateRelease(pos + 1);
-		}
-		if (input[pos] == '+') { // Build meta -> descend
-			return stateMeta(pos + 1);
-		}
+		private boolean stateRelease(int index) {
+			int pos = index;
+			while (pos < input.length() && isIdentifier(pos)) {
+				pos++; // match [0..9a-zA-Z-]+
+			}
+			if (pos == index) { // Empty String -> Error
+				errPos = index;
+				return false;
+			}
 
-		errPos = pos;
-		return false;
-	}
+			preParts.add(input.substring(index, pos));
+			if (pos == input.length()) { // End of input
+				return true;
+			}
+			if (input.charAt(pos) == '.') { // More parts -> descend
+				return stateRelease(pos + 1);
+			}
+			if (input.charAt(pos) == '+') { // Build meta -> descend
+				return stateMeta(pos + 1);
+			}
 
-	private boolean stateMeta(int index) {
-		int pos = index;
-		while ((pos < input.length)
-				&& ((input[pos] >= '0' && input[pos] <= '9')
-						|| (input[pos] >= 'a' && input[pos] <= 'z')
-						|| (input[pos] >= 'A' && input[pos] <= 'Z') || input[pos] == '-')) {
-			pos++; // match [0..9a-zA-Z-]+
+			errPos = pos;
+			return false;
 		}
-		if (pos == index) { // Empty String -> Error
-			errPos = index;
+
+		private boolean stateMeta(int index) {
+			int pos = index;
+			while (pos < input.length() && isIdentifier(pos)) {
+				pos++; // match [0..9a-zA-Z-]+
+			}
+			if (pos == index) { // Empty String -> Error
+				errPos = index;
+				return false;
+			}
+
+			metaParts.add(input.substring(index, pos));
+			if (pos == input.length()) { // End of input
+				return true;
+			}
+			if (input.charAt(pos) == '.') { // More parts -> descend
+				return stateMeta(pos + 1);
+			}
+			errPos = pos;
 			return false;
 		}
+	}
 
-		metaParts.add(new String(input, index, pos - index));
-		if (pos == input.length) { // End of input
-			return true;
+	/**
+	 * Minimal growable list of identifiers that does not allocate anything for versions without tags
+	 */
+	private static final class Identifiers {
+		private String[] values = NO_IDENTIFIERS;
+		private int size;
+
+		private void add(String value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size == 0 ? 2 : size * 2);
+			}
+			values[size++] = value;
 		}
-		if (input[pos] == '.') { // More parts -> descend
-			return stateMeta(pos + 1);
+
+		private String[] toArray() {
+			return size == values.length ? values : Arrays.copyOf(values, size);
 		}
-		errPos = pos;
-		return false;
 	}
-}
\ No newline at end of file
+}
@@ -38,7 +38,7 @@ public class SemanticVersionAdapter extends TypeAdapter<SemanticVersion> {
   public SemanticVersion read(JsonReader jsonReader) throws IOException {
     String version = jsonReader.nextString();
     try {
-      return new SemanticVersion(version);
+      return SemanticVersion.of(version);
     } catch (ParseException | ArrayIndexOutOfBoundsException e) {
       System.out.print("Failed to parse '" + version + "' to SemanticVersion");
       e.printStackTrace();
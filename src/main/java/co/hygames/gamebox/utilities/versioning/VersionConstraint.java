@@ -0,0 +1,261 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.utilities.versioning;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A parsed version constrain like '~> 1.2, >= 1.2.4'.
+ *
+ * The constrain is parsed once into a list of bounds that all have to be met by a version.
+ * The twiddle wakka operator is expanded into an inclusive lower and an exclusive upper bound.
+ * Matching a version against the constrain does not allocate.
+ *
+ * Like in {@link VersionRangeUtility}, pre-release and build meta data are ignored on both sides.
+ *
+ * @author Niklas Eicker
+ */
+public final class VersionConstraint {
+    private static final int MAX_CACHE_SIZE = 4096;
+    private static final Map<String, VersionConstraint> CACHE = new ConcurrentHashMap<>();
+
+    private final String constraint;
+    private final Bound[] bounds;
+
+    private VersionConstraint(String constraint, Bound[] bounds) {
+        this.constraint = constraint;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Get the parsed version constrain. Parsed constrains are cached, so equal strings share one instance.
+     *
+     * @param constraint the constrain to parse
+     * @return the parsed constrain
+     * @throws ParseException if a version in the constrain is not a valid number
+     * @throws IllegalArgumentException if the constrain uses an unknown operator or a version has too many parts
+     */
+    public static VersionConstraint of(String constraint) throws ParseException {
+        VersionConstraint cached = CACHE.get(constraint);
+        if (cached != null) return cached;
+        VersionConstraint parsed = parse(constraint);
+        if (CACHE.size() >= MAX_CACHE_SIZE) {
+            // constrains come from a limited set of modules; overflowing the cache is not worth an LRU
+            CACHE.clear();
+        }
+        VersionConstraint previous = CACHE.putIfAbsent(constraint, parsed);
+        return previous != null ? previous : parsed;
+    }
+
+    /**
+     * Parse a version constrain without using the cache
+     *
+     * @see #of(String)
+     */
+    public static VersionConstraint parse(String constraint) throws ParseException {
+        List<Bound> bounds = new ArrayList<>();
+        for (String part : constraint.split(",")) {
+            parsePart(removeWhiteSpace(part), bounds);
+        }
+        return new VersionConstraint(constraint, bounds.toArray(new Bound[0]));
+    }
+
+    private static void parsePart(String part, List<Bound> bounds) throws ParseException {
+        int versionStart = 0;
+        while (versionStart < part.length() && !isDigit(part.charAt(versionStart))) {
+            versionStart++;
+        }
+        String operator = part.substring(0, versionStart);
+        String version = part.substring(versionStart);
+        // pre-release and build meta data are ignored
+        int metaStart = indexOfAny(version, '-', '+');
+        if (metaStart >= 0) version = version.substring(0, metaStart);
+        List<String> numbers = new ArrayList<>(Arrays.asList(version.split("\\.")));
+        if (numbers.size() > 3) {
+            throw new IllegalArgumentException("Version '" + version + "' has an illegal number of dots");
+        }
+        int precision = numbers.size();
+        int[] parsed = new int[3];
+        for (int i = 0; i < precision; i++) {
+            parsed[i] = parseNumber(numbers.get(i), part);
+        }
+        Bound bound = new Bound(Operator.EQUAL, parsed[0], parsed[1], parsed[2]);
+        switch (operator) {
+            case "":
+            case "=":
+                bounds.add(bound);
+                break;
+            case ">":
+                bounds.add(bound.withOperator(Operator.GREATER));
+                break;
+            case "<":
+                bounds.add(bound.withOperator(Operator.LESS));
+                break;
+            case ">=":
+                bounds.add(bound.withOperator(Operator.GREATER_OR_EQUAL));
+                break;
+            case "<=":
+                bounds.add(bound.withOperator(Operator.LESS_OR_EQUAL));
+                break;
+            case "~>":
+                // ~> 1 and ~> 1.2 allow any later 1.x.x version, ~> 1.2.3 allows any later 1.2.x version
+                int bumped = precision > 1 ? precision - 2 : 0;
+                int[] upper = new int[3];
+                for (int i = 0; i < bumped; i++) {
+                    upper[i] = parsed[i];
+                }
+                upper[bumped] = parsed[bumped] + 1;
+                bounds.add(bound.withOperator(Operator.GREATER_OR_EQUAL));
+                bounds.add(new Bound(Operator.LESS, upper[0], upper[1], upper[2]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown version range operator: " + operator);
+        }
+    }
+
+    private static int parseNumber(String number, String part) throws ParseException {
+        if (number.isEmpty() || number.length() > 9) {
+            throw new ParseException("Invalid version in the constrain '" + part + "'", 0);
+        }
+        int value = 0;
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (!isDigit(c)) {
+                throw new ParseException("Invalid version in the constrain '" + part + "'", i);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static String removeWhiteSpace(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isWhitespace(value.charAt(i))) builder.append(value.charAt(i));
+        }
+        return builder.toString();
+    }
+
+    private static int indexOfAny(String value, char first, char second) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == first || value.charAt(i) == second) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Check whether a version meets all bounds of this constrain
+     *
+     * @param version the version to check
+     * @return true if the version is in the range of this constrain
+     */
+    public boolean matches(SemanticVersion version) {
+        for (Bound bound : bounds) {
+            if (!bound.matches(version)) return false;
+        }
+        return true;
+    }
+
+    public List<Bound> getBounds() {
+        return Collections.unmodifiableList(Arrays.asList(bounds));
+    }
+
+    @Override
+    public String toString() {
+        return constraint;
+    }
+
+    public enum Operator {
+        EQUAL,
+        GREATER,
+        LESS,
+        GREATER_OR_EQUAL,
+        LESS_OR_EQUAL
+    }
+
+    /**
+     * Single comparison of a version against a bound
+     */
+    public static final class Bound {
+        private final Operator operator;
+        private final int major;
+        private final int minor;
+        private final int patch;
+
+        private Bound(Operator operator, int major, int minor, int patch) {
+            this.operator = operator;
+            this.major = major;
+            this.minor = minor;
+            this.patch = patch;
+        }
+
+        private Bound withOperator(Operator operator) {
+            return new Bound(operator, major, minor, patch);
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        public int getMajor() {
+            return major;
+        }
+
+        public int getMinor() {
+            return minor;
+        }
+
+        public int getPatch() {
+            return patch;
+        }
+
+        public boolean matches(SemanticVersion version) {
+            int comparison = version.major != major ? Integer.compare(version.major, major)
+                    : version.minor != minor ? Integer.compare(version.minor, minor)
+                    : Integer.compare(version.patch, patch);
+            switch (operator) {
+                case EQUAL:
+                    return comparison == 0;
+                case GREATER:
+                    return comparison > 0;
+                case LESS:
+                    return comparison < 0;
+                case GREATER_OR_EQUAL:
+                    return comparison >= 0;
+                default:
+                    return comparison <= 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return operator + " " + major + "." + minor + "." + patch;
+        }
+    }
+}
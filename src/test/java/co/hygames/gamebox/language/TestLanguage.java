@@ -21,11 +21,25 @@ package co.hygames.gamebox.language;
 import co.hygames.gamebox.exceptions.language.LanguageException;
 import co.hygames.gamebox.exceptions.language.MissingListException;
 import co.hygames.gamebox.exceptions.language.MissingMessageException;
+import co.hygames.gamebox.language.messages.SimpleMessage;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,8 +49,8 @@ public class TestLanguage {
     public void loadDefaultFile() {
         try {
             Language language = new Language("default.yml", "default.yml");
-            assertEquals(language.messages.size(), 4);
-            assertEquals(language.lists.size(), 2);
+            assertEquals(language.getMessageCount(), 4);
+            assertEquals(language.getListCount(), 2);
         } catch (LanguageException e) {
             fail("Failed to load the language", e);
         }
@@ -88,10 +102,260 @@ public class TestLanguage {
         }
     }
 
+    @Test
+    @DisplayName("handles resolve to the same messages as keys and find does not throw")
+    public void handlesAndFind() {
+        try {
+            Language language = new Language("lang_de_DE.yml", "default.yml");
+            int name = language.getHandle("name");
+            int list = language.getHandle("section.secondList");
+            assertTrue(name >= 0);
+            assertSame(language.getMessage("name"), language.getMessage(name));
+            assertSame(language.getMessageList("section.secondList"), language.getMessageList(list));
+            assertTrue(language.getHandle("doesNotExist") < 0);
+            assertThrows(MissingMessageException.class, () -> language.getMessage(list));
+            assertThrows(MissingListException.class, () -> language.getMessageList(-1));
+            assertNull(language.findMessage("doesNotExist"));
+            assertNull(language.findMessageList("name"));
+            assertEquals("Deutscher name", language.findMessage("name").get());
+        } catch (LanguageException e) {
+            fail("Failed to load the language", e);
+        }
+    }
+
+    @Test
+    @DisplayName("a missing GameBox message names its key")
+    public void missingGameBoxMessage() throws Exception {
+        File folder = copyLanguageFiles();
+        Files.write(new File(folder, "lang_en.yml").toPath(), "singleString: \"Hi\"\n".getBytes(StandardCharsets.UTF_8));
+        co.hygames.gamebox.language.Language old = GameBoxLanguage.Messages.language;
+        try {
+            GameBoxLanguage.Messages.language = new Language(folder, "lang_en.yml", "lang_en.yml");
+            MissingMessageException exception = assertThrows(MissingMessageException.class, GameBoxLanguage.Messages.NAME::get);
+            assertTrue(exception.getMessage().contains("'name'"));
+            GameBoxLanguage.Messages.language = new Language(folder, "default.yml", "default.yml");
+            assertEquals("Test name", GameBoxLanguage.Messages.NAME.get());
+        } finally {
+            GameBoxLanguage.Messages.language = old;
+        }
+    }
+
+    @Test
+    @DisplayName("the key index keeps handles stable while growing")
+    public void keyIndex() {
+        MessageKeyIndex index = new MessageKeyIndex();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, index.add("section." + i));
+        }
+        assertEquals(1000, index.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, index.find("section." + i));
+            assertEquals(i, index.add("section." + i));
+        }
+        assertSame("section.7".intern(), index.getKey(7));
+        assertEquals(MessageKeyIndex.MISSING, index.find("section"));
+    }
+
+    @Test
+    @DisplayName("a compiled bundle is cached next to the language file and rebuilt when the file changes")
+    public void cachedBundle() throws Exception {
+        File folder = copyLanguageFiles();
+        new Language(folder, "lang_de_DE.yml", "default.yml");
+        File bundle = new File(folder, ".lang_de_DE.yml.bundle");
+        assertTrue(bundle.isFile());
+        assertTrue(new File(folder, ".default.yml.bundle").isFile());
+
+        // loaded from the bundle
+        Language cached = new Language(folder, "lang_de_DE.yml", "default.yml");
+        assertFalse(cached.getMessage("name") instanceof SimpleMessage);
+        assertEquals("Deutscher name", cached.getMessage("name").get());
+        assertEquals(Arrays.asList("einziger Eintrag"), cached.getMessageList("list").get());
+        assertEquals("Hello", cached.getMessage("section.hello").get());
+
+        File languageFile = new File(folder, "lang_de_DE.yml");
+        Files.write(languageFile.toPath(), "name: \"Neuer Name\"\n".getBytes(StandardCharsets.UTF_8));
+        languageFile.setLastModified(languageFile.lastModified() + 2000);
+        assertEquals("Neuer Name", new Language(folder, "lang_de_DE.yml", "default.yml").getMessage("name").get());
+
+        Files.write(bundle.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30});
+        assertEquals("Neuer Name", new Language(folder, "lang_de_DE.yml", "default.yml").getMessage("name").get());
+    }
+
+    @Test
+    @DisplayName("the bundle of a module jar is replaced when a new version of the jar is loaded")
+    public void jarBundle() throws Exception {
+        File folder = Files.createTempDirectory("gamebox-language").toFile();
+        folder.deleteOnExit();
+        Files.write(new File(folder, "lang_en.yml").toPath(), "example: \"Custom message\"\n".getBytes(StandardCharsets.UTF_8));
+        File jars = Files.createTempDirectory("gamebox-jars").toFile();
+        jars.deleteOnExit();
+        for (String version : new String[]{"1.0.0", "1.1.0"}) {
+            File jar = new File(jars, "test-module@" + version + ".jar");
+            Files.copy(new File("src/test/resources/module/local/test_local_module_1.jar").toPath(), jar.toPath());
+            jar.deleteOnExit();
+            Language language = new Language(folder, jar, "lang_en.yml", "lang_en.yml");
+            assertEquals("Custom message", language.getMessage("example").get());
+            assertEquals("I am in a category", language.getMessage("categoryName.messageInCategory").get());
+        }
+        String[] bundles = folder.list((dir, name) -> name.endsWith(".bundle"));
+        Arrays.sort(bundles);
+        assertArrayEquals(new String[]{".jar-lang_en.yml.bundle", ".lang_en.yml.bundle"}, bundles);
+        for (File file : folder.listFiles()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Test
+    @DisplayName("messages are resolved by locale, falling back from region to base language to the server language")
+    public void localeFallback() throws Exception {
+        File folder = copyLanguageFiles();
+        Files.write(new File(folder, "lang_de.yml").toPath(), "section:\n  hello: \"Hallo\"\n".getBytes(StandardCharsets.UTF_8));
+        Language language = new Language(folder, "default.yml", "default.yml");
+        Locale german = new Locale("de", "DE");
+        assertEquals("Deutscher name", language.getMessage("name", german).get());
+        assertEquals("Hallo", language.getMessage("section.hello", german).get());
+        assertEquals(Arrays.asList("Hey", "There"), language.getMessageList("section.secondList", german).get());
+        assertEquals("Hallo", language.getMessage("section.hello", new Locale("de", "AT")).get());
+        assertEquals("Test name", language.getMessage("name", new Locale("de", "AT")).get());
+        assertEquals("Test name", language.getMessage("name", Locale.FRENCH).get());
+        assertEquals("Test name", language.getMessage("name", null).get());
+        assertNull(language.findMessage("doesNotExist", german));
+        assertThrows(MissingListException.class, () -> language.getMessageList("doesNotExist", german));
+        assertEquals(3, language.getCachedLocaleCount());
+    }
+
+    @Test
+    @DisplayName("only a bounded number of locales is kept loaded")
+    public void boundedLocaleCache() throws Exception {
+        Language language = new Language(copyLanguageFiles(), "default.yml", "default.yml");
+        for (String country : Locale.getISOCountries()) {
+            assertEquals(country.equals("DE") ? "Deutscher name" : "Test name", language.getMessage("name", new Locale("de", country)).get());
+        }
+        assertTrue(language.getCachedLocaleCount() <= 8);
+        assertEquals("Deutscher name", language.getMessage("name", new Locale("de", "DE")).get());
+    }
+
+    @Test
+    @DisplayName("concurrent requests for a new locale all see the same messages")
+    public void concurrentLocaleLoading() throws Exception {
+        Language language = new Language(copyLanguageFiles(), "default.yml", "default.yml");
+        Locale german = new Locale("de", "DE");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> names = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                names.add(executor.submit(() -> language.getMessage("name", german).get()));
+            }
+            for (Future<String> name : names) {
+                assertEquals("Deutscher name", name.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, language.getCachedLocaleCount());
+    }
+
+    @Test
+    @DisplayName("concurrent writers of the same bundle do not corrupt each other")
+    public void concurrentBundleWrites() throws Exception {
+        File folder = Files.createTempDirectory("gamebox-language").toFile();
+        folder.deleteOnExit();
+        File bundleFile = new File(folder, ".lang_de.yml.bundle");
+        Map<String, Object> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            entries.put("section.message" + i, "Nachricht " + i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> lastMessages = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                lastMessages.add(executor.submit(() -> {
+                    LanguageBundle.write(bundleFile, 1, 2, entries);
+                    LanguageBundle bundle = LanguageBundle.open(bundleFile, 1, 2);
+                    return bundle.getMessage(bundle.size() - 1).get();
+                }));
+            }
+            for (Future<String> lastMessage : lastMessages) {
+                assertEquals("Nachricht 499", lastMessage.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        String[] files = folder.list();
+        assertArrayEquals(new String[]{bundleFile.getName()}, files);
+        bundleFile.deleteOnExit();
+    }
+
+    @Test
+    @DisplayName("a bundle with counts, lengths or offsets outside of the file is rejected when it is opened")
+    public void corruptBundle() throws Exception {
+        File folder = Files.createTempDirectory("gamebox-language").toFile();
+        folder.deleteOnExit();
+        File bundleFile = new File(folder, ".corrupt.bundle");
+        bundleFile.deleteOnExit();
+        Map<String, Object> entries = new LinkedHashMap<>();
+        entries.put("name", "Name");
+        entries.put("list", Arrays.asList("one", "two"));
+        // entry count (negative, too large), key length, value offset (past the end, into the header) and type
+        int[][] corruptions = {{24, -1}, {24, 1000}, {32, -4}, {40, 1 << 20}, {28 + 16 + 12, 0}, {28 + 16 + 8, 7}};
+        for (int[] corruption : corruptions) {
+            LanguageBundle.write(bundleFile, 1, 2, entries);
+            assertNotNull(LanguageBundle.open(bundleFile, 1, 2));
+            try (RandomAccessFile file = new RandomAccessFile(bundleFile, "rw")) {
+                file.seek(corruption[0]);
+                file.writeInt(corruption[1]);
+            }
+            assertNull(LanguageBundle.open(bundleFile, 1, 2), "corrupt int at " + corruption[0]);
+        }
+        // a negative list line count and line length
+        LanguageBundle.write(bundleFile, 1, 2, entries);
+        int listOffset;
+        try (RandomAccessFile file = new RandomAccessFile(bundleFile, "rw")) {
+            file.seek(28 + 16 + 12);
+            listOffset = file.readInt();
+            file.seek(listOffset + 4);
+            file.writeInt(-3);
+        }
+        assertNull(LanguageBundle.open(bundleFile, 1, 2));
+        LanguageBundle.write(bundleFile, 1, 2, entries);
+        try (RandomAccessFile file = new RandomAccessFile(bundleFile, "rw")) {
+            file.seek(listOffset);
+            file.writeInt(-1);
+        }
+        assertNull(LanguageBundle.open(bundleFile, 1, 2));
+    }
+
+    private static File copyLanguageFiles() throws IOException {
+        File folder = Files.createTempDirectory("gamebox-language").toFile();
+        folder.deleteOnExit();
+        for (String file : new String[]{"default.yml", "lang_de_DE.yml"}) {
+            File copy = new File(folder, file);
+            Files.copy(new File("src/test/resources/language", file).toPath(), copy.toPath());
+            copy.deleteOnExit();
+        }
+        return folder;
+    }
+
     private class Language extends co.hygames.gamebox.language.Language {
         public Language(String language, String defaultLanguage) throws LanguageException {
-            File source = new File("src/test/resources/language");
+            this(languageFolder(), language, defaultLanguage);
+        }
+
+        public Language(File source, String language, String defaultLanguage) throws LanguageException {
             this.setup(source, source, language, defaultLanguage);
         }
+
+        public Language(File folder, File source, String language, String defaultLanguage) throws LanguageException {
+            this.setup(folder, source, language, defaultLanguage);
+        }
+    }
+
+    private static File languageFolder() throws LanguageException {
+        try {
+            // the bundles are written next to the language files, so do not use the resources directly
+            return copyLanguageFiles();
+        } catch (IOException e) {
+            throw new LanguageException("Failed to copy the test language files", e);
+        }
     }
 }
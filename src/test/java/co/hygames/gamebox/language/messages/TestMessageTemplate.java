@@ -0,0 +1,86 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.language.messages;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestMessageTemplate {
+
+    @Test
+    @DisplayName("Placeholders should be replaced literally in one pass")
+    public void render() {
+        MessageTemplate template = MessageTemplate.compile("%player% paid %amount%$ to %player%");
+        assertEquals(Arrays.asList("%player%", "%amount%", "%player%"), template.getPlaceholders());
+        Map<String, String> context = new HashMap<>();
+        context.put("%player%", "Nikl$1\\");
+        context.put("%amount%", "[5]");
+        assertEquals("Nikl$1\\ paid [5]$ to Nikl$1\\", template.render(context));
+        // the replacement must not be searched for placeholders again
+        context.put("%player%", "%amount%");
+        assertEquals("%amount% paid [5]$ to %amount%", template.render(context));
+    }
+
+    @Test
+    @DisplayName("Unknown placeholders and plain percent signs should be kept")
+    public void keepUnknown() {
+        MessageTemplate template = MessageTemplate.compile("50% off for %name% and %unknown%, 100%%");
+        assertEquals(Arrays.asList("%name%", "%unknown%"), template.getPlaceholders());
+        assertEquals("50% off for Bob and %unknown%, 100%%", template.render(Collections.singletonMap("%name%", "Bob")));
+    }
+
+    @Test
+    @DisplayName("Messages without placeholders should render to their source")
+    public void withoutPlaceholders() {
+        String source = "Hello there";
+        MessageTemplate template = MessageTemplate.compile(source);
+        assertFalse(template.hasPlaceholders());
+        assertSame(source, template.render(Collections.singletonMap("%name%", "Bob")));
+        SimpleMessage message = new SimpleMessage("Hi %name%!", "greeting");
+        assertEquals("Hi %name%!", message.get());
+        assertEquals("Hi Bob!", message.resolve(Collections.singletonMap("%name%", "Bob")));
+    }
+
+    @Test
+    @DisplayName("Lists should resolve every line, optionally into a read only list")
+    public void resolveList() {
+        SimpleMessageList list = new SimpleMessageList(Arrays.asList("Game: %game%", "", "Players: %players%/%max%"), "lore");
+        Map<String, String> context = new HashMap<>();
+        context.put("%game%", "TicTacToe");
+        context.put("%players%", "1");
+        context.put("%max%", "2");
+        assertEquals(Arrays.asList("Game: TicTacToe", "", "Players: 1/2"), list.resolve(context));
+        list.resolve(context).add("mutable");
+        List<String> immutable = list.resolve(context, true);
+        assertEquals(Arrays.asList("Game: TicTacToe", "", "Players: 1/2"), immutable);
+        assertThrows(UnsupportedOperationException.class, () -> immutable.set(0, "changed"));
+        assertThrows(UnsupportedOperationException.class, () -> list.get().add("changed"));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import co.hygames.gamebox.exceptions.module.InvalidModuleException;
+import co.hygames.gamebox.module.local.LocalModule;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestModuleClassLoader {
+
+    @Test
+    @DisplayName("Loads the module class from the module jar")
+    public void loadModuleClass() throws InvalidModuleException, IOException, ClassNotFoundException {
+        LocalModule localModule = LocalModule.fromJar(new File("src/test/resources/module/local/test_local_module_1.jar"));
+        try (ModuleClassLoader classLoader = new ModuleClassLoader(localModule, GameBoxModule.class.getClassLoader(), Collections.emptyList())) {
+            Class<? extends GameBoxModule> moduleClass = classLoader.loadModuleClass(localModule.getEntryPoint());
+            assertSame(classLoader, moduleClass.getClassLoader());
+            assertSame(GameBoxModule.class, moduleClass.getSuperclass());
+            assertThrows(ClassNotFoundException.class, () -> classLoader.loadModuleClass("co.hygames.gamebox.modules.template.TemplateLanguage"));
+        }
+    }
+
+    @Test
+    @DisplayName("Reports class loaders that are still reachable after unloading")
+    public void detectLeak() throws InvalidModuleException, IOException {
+        LocalModule localModule = LocalModule.fromJar(new File("src/test/resources/module/local/test_local_module_1.jar"));
+        ModuleLeakDetector leakDetector = new ModuleLeakDetector(0, TimeUnit.NANOSECONDS);
+        ModuleClassLoader classLoader = new ModuleClassLoader(localModule, GameBoxModule.class.getClassLoader(), Collections.emptyList());
+        classLoader.close();
+        leakDetector.track(localModule.getId(), classLoader);
+        assertEquals(Collections.singletonList(localModule.getId()), leakDetector.pollLeakedModules());
+        assertEquals(0, leakDetector.getPendingCount());
+    }
+}
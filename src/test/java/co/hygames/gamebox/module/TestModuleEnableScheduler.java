@@ -0,0 +1,118 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import co.hygames.gamebox.module.data.DependencyData;
+import co.hygames.gamebox.module.local.LocalModule;
+import co.hygames.gamebox.module.local.LocalModuleData;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestModuleEnableScheduler {
+
+    @Test
+    @DisplayName("Dependencies are enabled before their dependents")
+    public void dependenciesFirst() throws InterruptedException {
+        List<LocalModule> modules = Arrays.asList(
+                module("app", hard("lib"), soft("soft-lib")),
+                module("lib", hard("gamebox")),
+                module("soft-lib"),
+                module("standalone"));
+        Map<String, Long> finishedAt = new ConcurrentHashMap<>();
+        Map<String, Long> startedAt = new ConcurrentHashMap<>();
+        ModuleEnableScheduler.EnableTimeline timeline = new ModuleEnableScheduler(4).enable(modules, module -> {
+            startedAt.put(module.getId(), System.nanoTime());
+            finishedAt.put(module.getId(), System.nanoTime());
+            return true;
+        });
+        assertEquals(4, timeline.getEntries().size());
+        assertTrue(startedAt.get("app") > finishedAt.get("lib"));
+        assertTrue(startedAt.get("app") > finishedAt.get("soft-lib"));
+        for (ModuleEnableScheduler.EnableTimeline.Entry entry : timeline.getEntries()) {
+            assertEquals(ModuleEnableScheduler.EnableStatus.ENABLED, entry.getStatus());
+        }
+    }
+
+    @Test
+    @DisplayName("Independent modules are enabled concurrently")
+    public void independentModulesInParallel() throws InterruptedException {
+        List<LocalModule> modules = Arrays.asList(module("first"), module("second"));
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        ModuleEnableScheduler.EnableTimeline timeline = new ModuleEnableScheduler(2).enable(modules, module -> {
+            bothRunning.countDown();
+            try {
+                // only returns true if the other module is enabled at the same time
+                return bothRunning.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        assertEquals(ModuleEnableScheduler.EnableStatus.ENABLED, timeline.getEntry("first").getStatus());
+        assertEquals(ModuleEnableScheduler.EnableStatus.ENABLED, timeline.getEntry("second").getStatus());
+    }
+
+    @Test
+    @DisplayName("Failing hard dependencies skip their dependents, failing soft dependencies do not")
+    public void failingDependencies() throws InterruptedException {
+        List<LocalModule> modules = Arrays.asList(
+                module("app", hard("lib")),
+                module("lib"),
+                module("soft-app", soft("soft-lib")),
+                module("soft-lib"),
+                module("cycle-1", hard("cycle-2")),
+                module("cycle-2", hard("cycle-1")));
+        Set<String> attempted = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        ModuleEnableScheduler.EnableTimeline timeline = new ModuleEnableScheduler(2).enable(modules, module -> {
+            attempted.add(module.getId());
+            return !module.getId().endsWith("lib");
+        });
+        assertEquals(modules.size(), timeline.getEntries().size());
+        assertEquals(ModuleEnableScheduler.EnableStatus.FAILED, timeline.getEntry("lib").getStatus());
+        assertEquals(ModuleEnableScheduler.EnableStatus.SKIPPED, timeline.getEntry("app").getStatus());
+        assertEquals(ModuleEnableScheduler.EnableStatus.ENABLED, timeline.getEntry("soft-app").getStatus());
+        assertEquals(ModuleEnableScheduler.EnableStatus.SKIPPED, timeline.getEntry("cycle-1").getStatus());
+        assertEquals(ModuleEnableScheduler.EnableStatus.SKIPPED, timeline.getEntry("cycle-2").getStatus());
+        assertFalse(attempted.contains("app"));
+        assertFalse(attempted.contains("cycle-1"));
+    }
+
+    static LocalModule module(String id, DependencyData... dependencies) {
+        return new LocalModule(new LocalModuleData()
+                .withId(id)
+                .withName(id)
+                .withVersion(new SemanticVersion(1, 0, 0))
+                .withDependencies(Arrays.asList(dependencies)));
+    }
+
+    static DependencyData hard(String id) {
+        return new DependencyData(id, "~> 1.0");
+    }
+
+    static DependencyData soft(String id) {
+        return new DependencyData(id, "~> 1.0").withSoftDependency(true);
+    }
+}
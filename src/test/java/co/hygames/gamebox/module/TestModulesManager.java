@@ -0,0 +1,178 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import co.hygames.gamebox.GameBox;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestModulesManager {
+    private static final String CATALOG = "["
+            + module("lib-test-module", "1.5.0", "")
+            + "," + module("app", "1.0.0", "{\"id\": \"lib-test-module\", \"versionConstrain\": \"~> 1.0\"}")
+            + "]";
+
+    private File dataFolder;
+    private ModulesManager modulesManager;
+    private final GameBox gameBox = new GameBox() {
+        @Override
+        public Logger getLogger() {
+            return Logger.getLogger("GameBox-test");
+        }
+
+        @Override
+        public File getDataFolder() {
+            return dataFolder;
+        }
+
+        @Override
+        public ModulesManager getModulesManager() {
+            return modulesManager;
+        }
+    };
+
+    private static String module(String id, String version, String dependency) {
+        return "{\"id\": \"" + id + "\", \"authors\": [\"Nikl\"], \"name\": \"" + id + "\", \"description\": \"Test\","
+                + " \"sourceUrl\": \"https://github.com/hygames-team\", \"latestVersion\": \"" + version + "\", \"lastUpdateAt\": 1,"
+                + " \"versions\": [{\"version\": \"" + version + "\", \"updatedAt\": 1, \"dependencies\": [" + dependency + "],"
+                + " \"releaseNotes\": []}]}";
+    }
+
+    @BeforeEach
+    public void prepare() throws IOException {
+        dataFolder = Files.createTempDirectory("gamebox-data").toFile();
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.walk(dataFolder.toPath()).map(Path::toFile).sorted((a, b) -> b.getPath().length() - a.getPath().length()).forEach(File::delete);
+    }
+
+    @Test
+    @DisplayName("A failed download should leave the modules directory untouched")
+    public void failedInstallation() throws Exception {
+        File mirror = new File(dataFolder, "modules/mirror");
+        File assets = new File(mirror, "assets/modules");
+        assets.mkdirs();
+        Files.write(new File(mirror, "modules.json").toPath(), CATALOG.getBytes(StandardCharsets.UTF_8));
+        // the jar of 'app' is missing, so its download fails
+        Files.copy(Paths.get("src/test/resources/module/local/test_local_module_2.jar"), new File(assets, "lib-test-module@1.5.0.jar").toPath());
+        modulesManager = new ModulesManager(gameBox);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> modulesManager.installModule("app").get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IOException);
+        // the download of 'lib-test-module' completed, but was not applied
+        assertEquals(1, modulesManager.getModuleStore().getStoredJars().size());
+        assertTrue(jarNames(modulesManager.getModulesDir()).isEmpty());
+        assertTrue(jarNames(new File(modulesManager.getModulesDir(), "staging")).isEmpty());
+        assertNull(modulesManager.getModuleInstance("lib-test-module"));
+    }
+
+    @Test
+    @DisplayName("Modules that cannot be moved into the modules directory should not be applied")
+    public void failedActivation() throws Exception {
+        File mirror = new File(dataFolder, "modules/mirror");
+        File assets = new File(mirror, "assets/modules");
+        assets.mkdirs();
+        Files.write(new File(mirror, "modules.json").toPath(), CATALOG.getBytes(StandardCharsets.UTF_8));
+        Files.copy(Paths.get("src/test/resources/module/local/test_local_module_2.jar"), new File(assets, "lib-test-module@1.5.0.jar").toPath());
+        // a non empty directory is in the way of the downloaded jar
+        File blocked = new File(dataFolder, "modules/lib-test-module@1.5.0.jar");
+        blocked.mkdirs();
+        Files.write(new File(blocked, "content").toPath(), new byte[]{1});
+        modulesManager = new ModulesManager(gameBox);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> modulesManager.installModule("lib-test-module").get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof UncheckedIOException);
+        assertTrue(blocked.isDirectory());
+        assertTrue(jarNames(new File(modulesManager.getModulesDir(), "staging")).isEmpty());
+        assertNull(modulesManager.getModuleInstance("lib-test-module"));
+    }
+
+    @Test
+    @DisplayName("The API should be reached at the base URL from 'modules.yml'")
+    public void configuredCloud() throws Exception {
+        AtomicInteger catalogRequests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/custom/modules", exchange -> {
+            catalogRequests.incrementAndGet();
+            byte[] catalog = CATALOG.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, catalog.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(catalog);
+            }
+        });
+        server.start();
+        try {
+            File modulesDir = new File(dataFolder, "modules");
+            modulesDir.mkdirs();
+            String settings = "cloud:\n"
+                    + "  baseUrl: http://127.0.0.1:" + server.getAddress().getPort() + "/custom/\n"
+                    + "  connectTimeoutMillis: 1000\n"
+                    + "  readTimeoutMillis: 1000\n"
+                    + "modules:\n";
+            Files.write(new File(modulesDir, "modules.yml").toPath(), settings.getBytes(StandardCharsets.UTF_8));
+            modulesManager = new ModulesManager(gameBox);
+            modulesManager.whenCloudReady().get(10, TimeUnit.SECONDS);
+            assertEquals(1, catalogRequests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("Unreadable module settings should fall back to the defaults")
+    public void unreadableSettings() {
+        // a directory cannot be read as 'modules.yml'
+        new File(dataFolder, "modules/modules.yml").mkdirs();
+        modulesManager = new ModulesManager(gameBox);
+        assertTrue(modulesManager.getStartupTrace().getEntries().size() > 0);
+    }
+
+    private static List<String> jarNames(File directory) {
+        String[] names = directory.list((dir, name) -> name.endsWith(".jar"));
+        if (names == null) return Collections.emptyList();
+        return Arrays.asList(names);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestStartupTrace {
+
+    @Test
+    @DisplayName("Phases on different threads should be recorded with their thread and overlap")
+    public void overlappingPhases() throws Exception {
+        StartupTrace trace = new StartupTrace();
+        CountDownLatch localDone = new CountDownLatch(1);
+        long cloudStart = trace.begin();
+        CompletableFuture<Void> cloud = CompletableFuture.runAsync(() -> {
+            try {
+                localDone.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            trace.end("cloud", cloudStart);
+        });
+        long localStart = trace.begin();
+        Thread.sleep(5);
+        trace.end("local", localStart);
+        localDone.countDown();
+        cloud.get(5, TimeUnit.SECONDS);
+
+        StartupTrace.Entry local = trace.getEntry("local");
+        StartupTrace.Entry remote = trace.getEntry("cloud");
+        assertEquals(Thread.currentThread().getName(), local.getThread());
+        assertNotEquals(local.getThread(), remote.getThread());
+        assertTrue(local.overlaps(remote));
+        assertTrue(remote.overlaps(local));
+        assertEquals(2, trace.getEntries().size());
+        assertNull(trace.getEntry("missing"));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module;
+
+import co.hygames.gamebox.exceptions.module.ModuleVersionException;
+import co.hygames.gamebox.module.data.CloudModuleData;
+import co.hygames.gamebox.module.data.DependencyData;
+import co.hygames.gamebox.module.data.VersionData;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestVersionSolver {
+
+    @Test
+    @DisplayName("Solve - update modules together when only the combination is consistent")
+    public void combinedUpdate() throws ParseException, ModuleVersionException {
+        Map<String, VersionData> installed = new HashMap<>();
+        installed.put("lib", version("1.0.0"));
+        installed.put("app", version("1.0.0", hard("lib", "~> 1.0")));
+        Map<String, CloudModuleData> catalog = new HashMap<>();
+        catalog.put("lib", cloud("lib", version("1.0.0"), version("1.1.0"), version("2.0.0")));
+        catalog.put("app", cloud("app", version("1.0.0", hard("lib", "~> 1.0")), version("2.0.0", hard("lib", ">= 2.0"))));
+        Map<String, VersionData> plan = new VersionSolver(catalog, installed).solve(Arrays.asList("app", "lib"));
+        assertEquals(2, plan.size());
+        assertEquals(SemanticVersion.of("2.0.0"), plan.get("app").getVersion());
+        assertEquals(SemanticVersion.of("2.0.0"), plan.get("lib").getVersion());
+        // updating only the library has to respect the installed app
+        plan = new VersionSolver(catalog, installed).solve(Collections.singleton("lib"));
+        assertEquals(SemanticVersion.of("1.1.0"), plan.get("lib").getVersion());
+    }
+
+    @Test
+    @DisplayName("Solve - install missing hard dependencies transitively")
+    public void transitiveDependencies() throws ParseException, ModuleVersionException {
+        Map<String, CloudModuleData> catalog = new HashMap<>();
+        catalog.put("app", cloud("app", version("1.0.0", hard("lib", "~> 1.0"), soft("extras"))));
+        catalog.put("lib", cloud("lib", version("1.0.0", hard("core", ">= 1.2")), version("2.0.0")));
+        catalog.put("core", cloud("core", version("1.1.0"), version("1.3.0")));
+        catalog.put("extras", cloud("extras", version("1.0.0")));
+        Map<String, VersionData> plan = new VersionSolver(catalog, new HashMap<>()).solve(Collections.singleton("app"));
+        assertEquals(new ArrayList<>(Arrays.asList("app", "core", "lib")), new ArrayList<>(plan.keySet()));
+        assertEquals(SemanticVersion.of("1.0.0"), plan.get("lib").getVersion());
+        assertEquals(SemanticVersion.of("1.3.0"), plan.get("core").getVersion());
+    }
+
+    @Test
+    @DisplayName("Solve - backtrack to an older version if the newest one conflicts")
+    public void backtracking() throws ParseException, ModuleVersionException {
+        Map<String, VersionData> installed = new HashMap<>();
+        installed.put("core", version("1.0.0"));
+        Map<String, CloudModuleData> catalog = new HashMap<>();
+        // the newest app needs a lib version that does not work with the installed core
+        catalog.put("app", cloud("app", version("1.0.0", hard("lib", "~> 1.0")), version("2.0.0", hard("lib", ">= 2.0"))));
+        catalog.put("lib", cloud("lib", version("1.0.0", hard("core", "~> 1.0")), version("2.0.0", hard("core", ">= 2.0"))));
+        catalog.put("core", cloud("core", version("1.0.0"), version("2.0.0")));
+        Map<String, VersionData> plan = new VersionSolver(catalog, installed).solve(Collections.singleton("app"));
+        assertEquals(2, plan.size());
+        assertEquals(SemanticVersion.of("1.0.0"), plan.get("app").getVersion());
+        assertEquals(SemanticVersion.of("1.0.0"), plan.get("lib").getVersion());
+    }
+
+    @Test
+    @DisplayName("Solve - fail if no consistent versions exist")
+    public void unsatisfiable() throws ParseException, ModuleVersionException {
+        Map<String, VersionData> installed = new HashMap<>();
+        installed.put("core", version("1.0.0"));
+        installed.put("other", version("1.0.0", hard("core", "~> 1.0")));
+        Map<String, CloudModuleData> catalog = new HashMap<>();
+        catalog.put("app", cloud("app", version("1.0.0", hard("core", ">= 2.0"))));
+        catalog.put("core", cloud("core", version("1.0.0"), version("2.0.0")));
+        assertThrows(ModuleVersionException.class, () -> new VersionSolver(catalog, installed).solve(Collections.singleton("app")));
+        assertThrows(ModuleVersionException.class, () -> new VersionSolver(catalog, installed).solve(Collections.singleton("missing")));
+        // already installed in the newest version
+        assertTrue(new VersionSolver(catalog, installed).solve(Collections.singleton("core")).isEmpty());
+    }
+
+    private static CloudModuleData cloud(String id, VersionData... versions) {
+        return new CloudModuleData().withId(id).withVersions(Arrays.asList(versions));
+    }
+
+    private static VersionData version(String version, DependencyData... dependencies) throws ParseException {
+        return new VersionData().withVersion(SemanticVersion.of(version)).withDependencies(Arrays.asList(dependencies));
+    }
+
+    private static DependencyData hard(String id, String constrain) {
+        return new DependencyData(id, constrain);
+    }
+
+    private static DependencyData soft(String id) {
+        return new DependencyData(id, "~> 1.0").withSoftDependency(true);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import co.hygames.gamebox.module.data.CloudModuleData;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestCatalogReader {
+
+    @Test
+    @DisplayName("Modules should be passed on in catalog order")
+    public void readCatalog() throws IOException {
+        List<CloudModuleData> modules = new ArrayList<>();
+        int count;
+        try (Reader reader = new FileReader("src/test/resources/module/cloud/test_cloud_modules.json")) {
+            count = new CatalogReader().read(reader, modules::add);
+        }
+        assertEquals(2, count);
+        assertEquals("test-module", modules.get(0).getId());
+        assertEquals("test-module2", modules.get(1).getId());
+        assertEquals(new SemanticVersion(1, 2, 0), modules.get(0).getLatestVersion());
+    }
+
+    @Test
+    @DisplayName("Unknown fields and modules without id should be skipped")
+    public void skipUnknown() throws IOException {
+        String catalog = "[{\"id\": \"a\", \"downloads\": {\"total\": 5}, \"latestVersion\": \"1.0.0\"}, {\"name\": \"no id\"}]";
+        List<CloudModuleData> modules = new ArrayList<>();
+        assertEquals(1, new CatalogReader().read(new StringReader(catalog), modules::add));
+        assertEquals("a", modules.get(0).getId());
+    }
+
+    @Test
+    @DisplayName("A malformed catalog should fail with an IOException")
+    public void malformedCatalog() {
+        List<CloudModuleData> modules = new ArrayList<>();
+        assertThrows(IOException.class, () -> new CatalogReader().read(new StringReader("[{\"id\": \"a\"}, {\"id\": 5"), modules::add));
+        assertEquals(1, modules.size());
+    }
+}
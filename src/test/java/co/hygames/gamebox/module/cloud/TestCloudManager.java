@@ -0,0 +1,208 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import co.hygames.gamebox.GameBox;
+import co.hygames.gamebox.exceptions.module.GameBoxCloudException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestCloudManager {
+    private static final String ETAG = "\"catalog-1\"";
+    private static final GameBox GAME_BOX = new GameBox() {
+        @Override
+        public Logger getLogger() {
+            return Logger.getLogger("GameBox-test");
+        }
+    };
+
+    private HttpServer server;
+    private File cacheDir;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+    private final List<String> deltaQueries = new ArrayList<>();
+    private byte[] changes = null;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void prepare() throws IOException {
+        cacheDir = Files.createTempDirectory("gamebox-cloud").toFile();
+        cacheDir.deleteOnExit();
+        byte[] catalog = Files.readAllBytes(Paths.get("src/test/resources/module/cloud/test_cloud_modules.json"));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gamebox/modules", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null) {
+                deltaQueries.add(query);
+                if (changes == null) {
+                    // incremental updates are not supported
+                    exchange.sendResponseHeaders(400, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, changes.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(changes);
+                }
+                return;
+            }
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            fullResponses.incrementAndGet();
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, catalog.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(catalog);
+            }
+        });
+        server.createContext("/stalled/modules", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        release.countDown();
+        server.stop(0);
+        for (File file : cacheDir.listFiles()) {
+            file.delete();
+        }
+    }
+
+    private CloudFacade facade() {
+        return new CloudFacade("http://127.0.0.1:" + server.getAddress().getPort() + "/gamebox/");
+    }
+
+    @Test
+    @DisplayName("An unchanged catalog should only be downloaded once, even without incremental updates")
+    public void conditionalRefresh() throws GameBoxCloudException {
+        CloudManager cloudManager = new CloudManager(GAME_BOX, facade(), cacheDir);
+        assertFalse(cloudManager.loadCachedCloudContent());
+        cloudManager.updateCloudContent();
+        cloudManager.updateCloudContent();
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModifiedResponses.get());
+        assertEquals(1, deltaQueries.size());
+        assertEquals("test-module2", cloudManager.getModuleData("test-module2").getId());
+    }
+
+    @Test
+    @DisplayName("Changed modules and tombstones should be merged into the catalog and its cache")
+    public void incrementalRefresh() throws GameBoxCloudException {
+        CloudManager cloudManager = new CloudManager(GAME_BOX, facade(), cacheDir);
+        cloudManager.updateCloudContent();
+        changes = ("[{\"id\": \"test-module2\", \"deleted\": true, \"lastUpdateAt\": 1300},"
+                + " {\"id\": \"new-module\", \"latestVersion\": \"1.0.0\", \"lastUpdateAt\": 2000}]").getBytes(StandardCharsets.UTF_8);
+        cloudManager.updateCloudContent();
+        assertEquals("updatedSince=1240", deltaQueries.get(0));
+        assertThrows(GameBoxCloudException.class, () -> cloudManager.getModuleData("test-module2"));
+        assertEquals("new-module", cloudManager.getModuleData("new-module").getId());
+        assertEquals(1, fullResponses.get());
+
+        CloudManager restarted = new CloudManager(GAME_BOX, facade(), cacheDir);
+        assertTrue(restarted.loadCachedCloudContent());
+        assertEquals("test-module", restarted.getModuleData("test-module").getId());
+        assertEquals("new-module", restarted.getModuleData("new-module").getId());
+        assertThrows(GameBoxCloudException.class, () -> restarted.getModuleData("test-module2"));
+        changes = "[]".getBytes(StandardCharsets.UTF_8);
+        restarted.updateCloudContent();
+        assertEquals("updatedSince=2000", deltaQueries.get(1));
+        assertEquals(1, fullResponses.get());
+    }
+
+    @Test
+    @DisplayName("A catalog that breaks off should not be merged into the loaded one")
+    public void brokenCatalog() throws Exception {
+        CloudManager cloudManager = new CloudManager(GAME_BOX, facade(), cacheDir);
+        cloudManager.updateCloudContent();
+        int modules = cloudManager.getCloudContent().size();
+        String broken = "[{\"id\": \"test-module\", \"latestVersion\": \"9.0.0\", \"lastUpdateAt\": 5000}, {\"id\": \"test-";
+        Files.write(new File(cacheDir, CatalogCache.FILE_NAME).toPath(), broken.getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(cloudManager.loadCachedCloudContent());
+        assertEquals(modules, cloudManager.getCloudContent().size());
+        assertEquals("1.2.0", cloudManager.getModuleData("test-module").getLatestVersion().toString());
+    }
+
+    @Test
+    @DisplayName("A new manager should start from the cached catalog and revalidate it")
+    public void startFromCache() throws GameBoxCloudException {
+        new CloudManager(GAME_BOX, facade(), cacheDir).updateCloudContent();
+        server.stop(0);
+
+        CloudManager offline = new CloudManager(GAME_BOX, facade(), cacheDir);
+        assertTrue(offline.loadCachedCloudContent());
+        assertEquals("test-module", offline.getModuleData("test-module").getId());
+        assertThrows(GameBoxCloudException.class, offline::updateCloudContent);
+        assertEquals("test-module", offline.getModuleData("test-module").getId());
+        assertEquals(1, fullResponses.get());
+    }
+
+    @Test
+    @DisplayName("Loading the catalog should not block the caller and serve the cache while the cloud is slow")
+    public void asyncLoad() throws Exception {
+        new CloudManager(GAME_BOX, facade(), cacheDir).updateCloudContent();
+        CloudManager cloudManager = new CloudManager(GAME_BOX,
+                new CloudFacade("http://127.0.0.1:" + server.getAddress().getPort() + "/stalled/"), cacheDir);
+        CompletableFuture<Void> loaded = cloudManager.loadCloudContentAsync();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cloudManager.getCloudContent().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("test-module", cloudManager.getModuleData("test-module").getId());
+        assertFalse(loaded.isDone());
+        release.countDown();
+        loaded.get(5, TimeUnit.SECONDS);
+        assertEquals(1, fullResponses.get());
+    }
+}
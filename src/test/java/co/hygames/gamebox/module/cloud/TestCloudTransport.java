@@ -0,0 +1,171 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import co.hygames.gamebox.GameBox;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestCloudTransport {
+    private static final GameBox GAME_BOX = new GameBox() {
+        @Override
+        public Logger getLogger() {
+            return Logger.getLogger("GameBox-test");
+        }
+    };
+    private static final String CONTENT = "some module content";
+
+    private File mirror;
+    private HttpServer server;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void prepare() throws IOException {
+        mirror = Files.createTempDirectory("gamebox-mirror").toFile();
+        Files.copy(Paths.get("src/test/resources/module/cloud/test_cloud_modules.json"), new File(mirror, "modules.json").toPath());
+        File assets = new File(mirror, "assets/modules");
+        assets.mkdirs();
+        Files.write(new File(assets, "test@1.0.0.jar").toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gzip", exchange -> {
+            assertEquals("gzip", exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                compressed.writeTo(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() throws IOException {
+        release.countDown();
+        server.stop(0);
+        Files.walk(mirror.toPath()).map(Path::toFile).sorted((a, b) -> b.getPath().length() - a.getPath().length()).forEach(File::delete);
+    }
+
+    @Test
+    @DisplayName("The file transport should answer conditional, ranged and unknown requests like the API")
+    public void fileTransport() throws IOException {
+        FileCloudTransport transport = new FileCloudTransport(mirror);
+        String eTag;
+        try (CloudTransport.Response response = transport.get("modules?updatedSince=5", Collections.emptyMap())) {
+            assertEquals(200, response.getStatus());
+            eTag = response.getHeader("ETag");
+            assertNotNull(eTag);
+            assertEquals(new File(mirror, "modules.json").length(), response.getContentLength());
+        }
+        try (CloudTransport.Response response = transport.get("modules", Collections.singletonMap("If-None-Match", eTag))) {
+            assertEquals(304, response.getStatus());
+        }
+        try (CloudTransport.Response response = transport.get("assets/modules/test@1.0.0.jar", Collections.singletonMap("Range", "bytes=5-"))) {
+            assertEquals(206, response.getStatus());
+            assertEquals(CONTENT.substring(5), read(response.getBody()));
+        }
+        try (CloudTransport.Response response = transport.get("assets/modules/test@1.0.0.jar", Collections.singletonMap("Range", "bytes=500-"))) {
+            assertEquals(416, response.getStatus());
+        }
+        assertEquals(404, transport.get("assets/modules/missing.jar", Collections.emptyMap()).getStatus());
+        File outside = File.createTempFile("gamebox-outside", ".json", mirror.getParentFile());
+        outside.deleteOnExit();
+        assertEquals(404, transport.get("../" + outside.getName(), Collections.emptyMap()).getStatus());
+    }
+
+    @Test
+    @DisplayName("The catalog and module files should be available from a local mirror")
+    public void offlineCloud() throws Exception {
+        File cacheDir = Files.createTempDirectory("gamebox-cloud").toFile();
+        CloudManager cloudManager = new CloudManager(GAME_BOX, new CloudFacade(new FileCloudTransport(mirror)), cacheDir);
+        cloudManager.updateCloudContent();
+        assertFalse(cloudManager.getCloudContent().isEmpty());
+        File target = new File(cacheDir, "test.jar");
+        File file = cloudManager.getDownloadManager()
+                .download("test", new FileCloudTransport(mirror), "assets/modules/test@1.0.0.jar", target)
+                .getFuture().get(10, TimeUnit.SECONDS);
+        assertEquals(CONTENT, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        cloudManager.getDownloadManager().shutdown();
+        for (File cached : cacheDir.listFiles()) {
+            cached.delete();
+        }
+        cacheDir.delete();
+    }
+
+    @Test
+    @DisplayName("The HTTP transport should decode gzip responses and respect the read timeout")
+    public void httpTransport() throws IOException {
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        HttpCloudTransport transport = new HttpCloudTransport(baseUrl, 1000, 200);
+        try (CloudTransport.Response response = transport.get("gzip", Collections.emptyMap())) {
+            assertEquals(200, response.getStatus());
+            assertEquals(-1, response.getContentLength());
+            assertEquals(CONTENT, read(response.getBody()));
+        }
+        assertThrows(SocketTimeoutException.class, () -> transport.get("slow", Collections.emptyMap()));
+        assertEquals(baseUrl.substring(0, baseUrl.length() - 1), transport.getEndpoint());
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.cloud;
+
+import co.hygames.gamebox.utilities.FileUtility;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestDownloadManager {
+    private static final byte[] CONTENT = new byte[200 * 1024];
+
+    private HttpServer server;
+    private File targetDir;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> ranges = new ArrayList<>();
+    private final List<String> ifRanges = new ArrayList<>();
+    private volatile String etag = "\"v1\"";
+    private final AtomicInteger servedBytes = new AtomicInteger();
+
+    @BeforeEach
+    public void prepare() throws IOException {
+        Arrays.fill(CONTENT, (byte) 7);
+        targetDir = Files.createTempDirectory("gamebox-downloads").toFile();
+        targetDir.deleteOnExit();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/files", exchange -> {
+            try {
+                Thread.sleep(50);
+                exchange.sendResponseHeaders(200, CONTENT.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(CONTENT);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.createContext("/ranged", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            ranges.add(range);
+            ifRanges.add(ifRange);
+            if (ifRange != null && !ifRange.equals(etag)) range = null;
+            int from = range == null ? 0 : Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (range != null) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (CONTENT.length - 1) + "/" + CONTENT.length);
+            }
+            exchange.sendResponseHeaders(range == null ? 200 : 206, CONTENT.length - from);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(CONTENT, from, CONTENT.length - from);
+            }
+            servedBytes.addAndGet(CONTENT.length - from);
+        });
+        server.createContext("/stuck", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(CONTENT);
+            } catch (IOException ignored) {
+                // the client is gone
+            }
+        });
+        server.createContext("/partial", exchange -> {
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(CONTENT, 0, CONTENT.length / 2);
+                body.flush();
+                release.await(10, TimeUnit.SECONDS);
+                body.write(CONTENT, CONTENT.length / 2, CONTENT.length - CONTENT.length / 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ignored) {
+                // the client is gone
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        release.countDown();
+        server.stop(0);
+        for (File file : targetDir.listFiles()) {
+            file.delete();
+        }
+    }
+
+    private CloudTransport transport() {
+        return new HttpCloudTransport("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    @Test
+    @DisplayName("Downloads should run in parallel within the per host limit")
+    public void parallelDownloads() throws Exception {
+        DownloadManager downloadManager = new DownloadManager(4, 2);
+        CountingTransport transport = new CountingTransport(transport());
+        List<DownloadManager.Download> downloads = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            downloads.add(downloadManager.download("file-" + i, transport, "files/" + i, new File(targetDir, "file-" + i)));
+        }
+        assertSame(downloads.get(0), downloadManager.download("file-0", transport, "files/0", new File(targetDir, "file-0")));
+        for (DownloadManager.Download download : downloads) {
+            File file = download.getFuture().get(10, TimeUnit.SECONDS);
+            assertEquals(CONTENT.length, file.length());
+            assertEquals(CONTENT.length, download.getBytesRead());
+        }
+        assertFalse(downloadManager.isDownloading());
+        assertTrue(transport.maxOpenResponses.get() <= 2);
+        assertEquals(6, downloadManager.getMetrics().getCompletedDownloads());
+        assertEquals(6L * CONTENT.length, downloadManager.getMetrics().getBytes());
+        assertTrue(downloadManager.getMetrics().getBytesPerSecond() > 0);
+        downloadManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("Cancelled downloads should be unregistered and leave no file")
+    public void cancelDownload() throws Exception {
+        DownloadManager downloadManager = new DownloadManager(1, 1);
+        File target = new File(targetDir, "stuck");
+        DownloadManager.Download running = downloadManager.download("stuck", transport(), "stuck", target);
+        DownloadManager.Download queued = downloadManager.download("queued", transport(), "files/queued", new File(targetDir, "queued"));
+        assertTrue(downloadManager.isDownloading());
+        queued.cancel();
+        running.cancel();
+        assertThrows(CancellationException.class, () -> running.getFuture().get(1, TimeUnit.SECONDS));
+        assertThrows(CancellationException.class, () -> queued.getFuture().get(1, TimeUnit.SECONDS));
+        assertFalse(downloadManager.isDownloading());
+        release.countDown();
+        downloadManager.shutdown();
+        assertEquals(0, downloadManager.getMetrics().getCompletedDownloads());
+        assertEquals(0, downloadManager.getMetrics().getFailedDownloads());
+        assertFalse(target.exists());
+        assertFalse(new File(targetDir, "stuck.part").exists());
+    }
+
+    @Test
+    @DisplayName("A download cancelled during the transfer should delete its part file and not count as failed")
+    public void cancelDuringTransfer() throws Exception {
+        DownloadManager downloadManager = new DownloadManager(1, 1);
+        File partFile = new File(targetDir, "partial.jar.part");
+        // the worker notices the cancel once its read times out
+        CloudTransport transport = new HttpCloudTransport("http://127.0.0.1:" + server.getAddress().getPort() + "/", 1000, 200);
+        DownloadManager.Download download = downloadManager.download("partial", transport, "partial", new File(targetDir, "partial.jar"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (download.getBytesRead() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(download.getBytesRead() > 0);
+        download.cancel();
+        assertThrows(CancellationException.class, () -> download.getFuture().get(1, TimeUnit.SECONDS));
+        deadline = System.currentTimeMillis() + 5000;
+        while (partFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(partFile.exists());
+        assertFalse(new File(targetDir, "partial.jar").exists());
+        assertEquals(0, downloadManager.getMetrics().getFailedDownloads());
+        downloadManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("An interrupted download should resume with the missing bytes only")
+    public void resumeDownload() throws Exception {
+        File target = new File(targetDir, "resumed.jar");
+        File partFile = new File(targetDir, "resumed.jar.part");
+        Files.write(partFile.toPath(), Arrays.copyOf(CONTENT, 1000));
+        Files.write(new File(targetDir, "resumed.jar.part.validator").toPath(), etag.getBytes(StandardCharsets.UTF_8));
+        File checksumSource = new File(targetDir, "content");
+        Files.write(checksumSource.toPath(), CONTENT);
+        String checksum = FileUtility.sha256(checksumSource);
+
+        DownloadManager downloadManager = new DownloadManager(1, 1);
+        File file = downloadManager.download("resumed", transport(), "ranged", target, checksum).getFuture().get(10, TimeUnit.SECONDS);
+        assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+        assertFalse(partFile.exists());
+        assertFalse(new File(targetDir, "resumed.jar.part.validator").exists());
+        assertEquals("bytes=1000-", ranges.get(0));
+        assertEquals(etag, ifRanges.get(0));
+        assertEquals(CONTENT.length - 1000, servedBytes.get());
+        downloadManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("A part file of a changed or unknown file should be replaced by the full file")
+    public void resumeChangedFile() throws Exception {
+        File target = new File(targetDir, "changed.jar");
+        File partFile = new File(targetDir, "changed.jar.part");
+        Files.write(partFile.toPath(), new byte[1000]);
+        Files.write(new File(targetDir, "changed.jar.part.validator").toPath(), etag.getBytes(StandardCharsets.UTF_8));
+        etag = "\"v2\"";
+
+        DownloadManager downloadManager = new DownloadManager(1, 1);
+        File file = downloadManager.download("changed", transport(), "ranged", target).getFuture().get(10, TimeUnit.SECONDS);
+        assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+        assertEquals("\"v1\"", ifRanges.get(0));
+        assertEquals(CONTENT.length, servedBytes.get());
+
+        // without a validator the part file cannot be matched to the file on the server
+        File unknown = new File(targetDir, "unknown.jar");
+        Files.write(new File(targetDir, "unknown.jar.part").toPath(), new byte[1000]);
+        file = downloadManager.download("unknown", transport(), "ranged", unknown).getFuture().get(10, TimeUnit.SECONDS);
+        assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+        assertNull(ranges.get(1));
+        downloadManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("A download that ends before its content length should fail and be resumed by the next attempt")
+    public void truncatedDownload() throws Exception {
+        File target = new File(targetDir, "truncated.jar");
+        File partFile = new File(targetDir, "truncated.jar.part");
+        DownloadManager downloadManager = new DownloadManager(1, 1);
+        // the connection closes after 400 of 1000 bytes
+        StubTransport truncated = new StubTransport(200, 1000, Arrays.copyOf(CONTENT, 400), null);
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> downloadManager.download("truncated", truncated, "truncated", target).getFuture().get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IOException);
+        assertFalse(target.exists());
+        assertEquals(400, partFile.length());
+        assertTrue(new File(targetDir, "truncated.jar.part.validator").isFile());
+        assertEquals(1, downloadManager.getMetrics().getFailedDownloads());
+
+        StubTransport rest = new StubTransport(206, 600, Arrays.copyOfRange(CONTENT, 400, 1000), "bytes 400-999/1000");
+        File file = downloadManager.download("truncated", rest, "truncated", target).getFuture().get(10, TimeUnit.SECONDS);
+        assertArrayEquals(Arrays.copyOf(CONTENT, 1000), Files.readAllBytes(file.toPath()));
+        assertEquals("bytes=400-", rest.range);
+        downloadManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("A partial response that does not start at the end of the part file should be rejected")
+    public void unexpectedRange() throws Exception {
+        File target = new File(targetDir, "shifted.jar");
+        File partFile = new File(targetDir, "shifted.jar.part");
+        Files.write(partFile.toPath(), Arrays.copyOf(CONTENT, 400));
+        Files.write(new File(targetDir, "shifted.jar.part.validator").toPath(), etag.getBytes(StandardCharsets.UTF_8));
+        DownloadManager downloadManager = new DownloadManager(1, 1);
+        StubTransport shifted = new StubTransport(206, 500, Arrays.copyOfRange(CONTENT, 500, 1000), "bytes 500-999/1000");
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> downloadManager.download("shifted", shifted, "shifted", target).getFuture().get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IOException);
+        assertFalse(target.exists());
+        assertEquals(400, partFile.length());
+        // without the validator the next attempt starts over
+        assertFalse(new File(targetDir, "shifted.jar.part.validator").exists());
+        downloadManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("A download with the wrong checksum should fail and not be moved into place")
+    public void checksumMismatch() throws Exception {
+        File target = new File(targetDir, "broken.jar");
+        DownloadManager downloadManager = new DownloadManager(1, 1);
+        DownloadManager.Download download = downloadManager.download("broken", transport(), "ranged", target, "00");
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> download.getFuture().get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IOException);
+        assertFalse(target.exists());
+        assertFalse(new File(targetDir, "broken.jar.part").exists());
+        downloadManager.shutdown();
+    }
+
+    /**
+     * Answers every request with the same response
+     */
+    private class StubTransport implements CloudTransport {
+        private final int status;
+        private final long contentLength;
+        private final byte[] body;
+        private final String contentRange;
+        private volatile String range;
+
+        private StubTransport(int status, long contentLength, byte[] body, String contentRange) {
+            this.status = status;
+            this.contentLength = contentLength;
+            this.body = body;
+            this.contentRange = contentRange;
+        }
+
+        @Override
+        public Response get(String path, Map<String, String> headers) {
+            range = headers.get("Range");
+            return new Response() {
+                @Override
+                public int getStatus() {
+                    return status;
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    if (name.equalsIgnoreCase("ETag")) return etag;
+                    if (name.equalsIgnoreCase("Content-Range")) return contentRange;
+                    return null;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(body);
+                }
+
+                @Override
+                public long getContentLength() {
+                    return contentLength;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public String getEndpoint() {
+            return "stub";
+        }
+    }
+
+    /**
+     * Counts the responses that are open at the same time on the client side, from the request until the body is closed
+     */
+    private static class CountingTransport implements CloudTransport {
+        private final CloudTransport transport;
+        private final AtomicInteger openResponses = new AtomicInteger();
+        private final AtomicInteger maxOpenResponses = new AtomicInteger();
+
+        private CountingTransport(CloudTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public Response get(String path, Map<String, String> headers) throws IOException {
+            maxOpenResponses.accumulateAndGet(openResponses.incrementAndGet(), Math::max);
+            Response response;
+            try {
+                response = transport.get(path, headers);
+            } catch (IOException e) {
+                openResponses.decrementAndGet();
+                throw e;
+            }
+            AtomicBoolean open = new AtomicBoolean(true);
+            Runnable closed = () -> {
+                if (open.compareAndSet(true, false)) openResponses.decrementAndGet();
+            };
+            return new Response() {
+                @Override
+                public int getStatus() {
+                    return response.getStatus();
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    return response.getHeader(name);
+                }
+
+                @Override
+                public InputStream getBody() throws IOException {
+                    return new FilterInputStream(response.getBody()) {
+                        @Override
+                        public void close() throws IOException {
+                            closed.run();
+                            super.close();
+                        }
+                    };
+                }
+
+                @Override
+                public long getContentLength() {
+                    return response.getContentLength();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    closed.run();
+                    response.close();
+                }
+            };
+        }
+
+        @Override
+        public String getEndpoint() {
+            return transport.getEndpoint();
+        }
+    }
+}
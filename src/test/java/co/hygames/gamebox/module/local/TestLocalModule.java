@@ -34,4 +34,11 @@ public class TestLocalModule {
         File invalidJarFile = new File("src/test/resources/module/local/test_local_module_no_module-yml.jar");
         assertThrows(InvalidModuleException.class, () -> LocalModule.fromJar(invalidJarFile));
     }
+
+    @Test
+    @DisplayName("Test finding the module class in a jar file without loading it")
+    public void testModuleEntryPoint() throws InvalidModuleException {
+        LocalModule localModule = LocalModule.fromJar(new File("src/test/resources/module/local/test_local_module_1.jar"));
+        assertEquals("co.hygames.gamebox.modules.template.ModuleTemplate", localModule.getEntryPoint());
+    }
 }
@@ -78,4 +78,12 @@ public class TestLocalModuleFile {
                 , manualLocalModuleData.getDependencies().toArray(new DependencyData[]{})
                 , "Dependencies do not match");
     }
+
+    @Test
+    @DisplayName("Parsed versions should be interned")
+    public void internParsedVersions() throws FileNotFoundException {
+        LocalModuleData first = YAML.loadAs(new FileReader(testLocalModuleFile), LocalModuleData.class);
+        LocalModuleData second = YAML.loadAs(new FileReader(testLocalModuleFile), LocalModuleData.class);
+        assertSame(first.getVersion(), second.getVersion());
+    }
 }
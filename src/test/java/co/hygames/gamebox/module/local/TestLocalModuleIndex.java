@@ -0,0 +1,89 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.local;
+
+import co.hygames.gamebox.exceptions.module.InvalidModuleException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLocalModuleIndex {
+    private File modulesDir;
+    private File jar;
+
+    @BeforeEach
+    public void prepare() throws IOException {
+        modulesDir = Files.createTempDirectory("gamebox-modules").toFile();
+        modulesDir.deleteOnExit();
+        jar = new File(modulesDir, "test-module@1.0.0.jar");
+        Files.copy(new File("src/test/resources/module/local/test_local_module_1.jar").toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        jar.deleteOnExit();
+    }
+
+    @Test
+    @DisplayName("Modules are restored from a saved index without changes")
+    public void restoreFromIndex() throws IOException, InvalidModuleException {
+        File indexFile = new File(modulesDir, LocalModuleIndex.FILE_NAME);
+        indexFile.deleteOnExit();
+        LocalModuleIndex index = new LocalModuleIndex(indexFile);
+        index.load();
+        assertNull(index.get(jar));
+        LocalModule read = index.getOrRead(jar);
+        index.save();
+
+        LocalModuleIndex reloaded = new LocalModuleIndex(indexFile);
+        reloaded.load();
+        LocalModule restored = reloaded.get(jar);
+        assertNotNull(restored);
+        assertAll(
+                () -> assertEquals(read, restored),
+                () -> assertEquals(read.getName(), restored.getName()),
+                () -> assertEquals(read.getAuthors(), restored.getAuthors()),
+                () -> assertEquals(read.getSourceUrl(), restored.getSourceUrl()),
+                () -> assertEquals(read.getEntryPoint(), restored.getEntryPoint()),
+                () -> assertEquals(read.getLanguageFiles(), restored.getLanguageFiles()),
+                () -> assertArrayEquals(read.getVersionData().getDependencies().toArray(), restored.getVersionData().getDependencies().toArray())
+        );
+    }
+
+    @Test
+    @DisplayName("Changed jars are not restored from the index")
+    public void changedJar() throws IOException, InvalidModuleException {
+        LocalModuleIndex index = new LocalModuleIndex(new File(modulesDir, LocalModuleIndex.FILE_NAME));
+        index.getOrRead(jar);
+        assertNotNull(index.get(jar));
+
+        // touching the jar keeps the entry valid, since the content did not change
+        assertTrue(jar.setLastModified(jar.lastModified() - 10_000));
+        assertNotNull(index.get(jar));
+
+        try (FileOutputStream out = new FileOutputStream(jar, true)) {
+            out.write(0);
+        }
+        assertNull(index.get(jar));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package co.hygames.gamebox.module.local;
+
+import co.hygames.gamebox.utilities.FileUtility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestModuleStore {
+    private File modulesDir;
+    private File jar;
+    private String hash;
+    private ModuleStore moduleStore;
+
+    @BeforeEach
+    public void prepare() throws IOException {
+        modulesDir = Files.createTempDirectory("gamebox-modules").toFile();
+        modulesDir.deleteOnExit();
+        jar = new File(modulesDir, "test-module@1.0.0.jar");
+        Files.copy(new File("src/test/resources/module/local/test_local_module_1.jar").toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        hash = FileUtility.sha256(jar);
+        moduleStore = new ModuleStore(modulesDir);
+    }
+
+    @Test
+    @DisplayName("Equal jars should share one stored file")
+    public void deduplicate() throws IOException {
+        File copy = new File(modulesDir, "test-module@1.0.1.jar");
+        Files.copy(jar.toPath(), copy.toPath());
+        moduleStore.adopt(jar, hash);
+        moduleStore.adopt(copy, hash);
+        assertTrue(moduleStore.contains(hash));
+        assertEquals(1, moduleStore.getStoredJars().size());
+        assertTrue(Files.isSameFile(jar.toPath(), copy.toPath()));
+
+        File linked = new File(modulesDir, "test-module@2.0.0.jar");
+        moduleStore.link(hash, linked);
+        assertEquals(hash, FileUtility.sha256(linked));
+    }
+
+    @Test
+    @DisplayName("Unreferenced and corrupt jars should be removed")
+    public void collectGarbageAndVerify() throws IOException {
+        moduleStore.adopt(jar, hash);
+        assertTrue(moduleStore.verify(false).isEmpty());
+        assertTrue(moduleStore.collectGarbage(Collections.singleton(hash)).isEmpty());
+
+        String fakeHash = "ab" + hash.substring(2);
+        File fake = moduleStore.getFile(fakeHash);
+        fake.getParentFile().mkdirs();
+        Files.copy(jar.toPath(), fake.toPath());
+        assertTrue(moduleStore.verify(true).isEmpty());
+        assertEquals(Collections.singletonList(fake), moduleStore.verify(false));
+
+        assertEquals(1, moduleStore.collectGarbage(Collections.emptySet()).size());
+        assertFalse(moduleStore.contains(hash));
+        assertTrue(jar.isFile());
+    }
+
+    @Test
+    @DisplayName("The newest unused versions of every module should be kept")
+    public void retainNewestVersions() throws IOException {
+        moduleStore.adopt(jar, hash);
+        File indexDir = Files.createTempDirectory("gamebox-index").toFile();
+        indexDir.deleteOnExit();
+        LocalModuleIndex moduleIndex = new LocalModuleIndex(new File(indexDir, LocalModuleIndex.FILE_NAME));
+        String[] hashes = new String[3];
+        for (int i = 0; i < hashes.length; i++) {
+            File version = new File(indexDir, "test-module@1." + (i + 1) + ".0.jar");
+            writeWithVersion(jar, "1." + (i + 1) + ".0", version);
+            hashes[i] = FileUtility.sha256(version);
+            moduleStore.adopt(version, hashes[i]);
+        }
+        File noModule = new File(indexDir, "no-module.jar");
+        Files.copy(new File("src/test/resources/module/local/test_local_module_no_module-yml.jar").toPath(), noModule.toPath());
+        moduleStore.adopt(noModule, FileUtility.sha256(noModule));
+
+        List<File> deleted = moduleStore.collectGarbage(Collections.singleton(hash), moduleIndex, 2);
+        assertEquals(2, deleted.size());
+        assertTrue(moduleStore.contains(hash));
+        assertFalse(moduleStore.contains(hashes[0]));
+        assertTrue(moduleStore.contains(hashes[1]));
+        assertTrue(moduleStore.contains(hashes[2]));
+        assertFalse(moduleStore.contains(FileUtility.sha256(noModule)));
+    }
+
+    @Test
+    @DisplayName("Hashes that are not 64 lowercase hex characters should be rejected")
+    public void rejectInvalidHashes() {
+        assertFalse(moduleStore.contains(null));
+        assertFalse(moduleStore.contains("00"));
+        assertFalse(moduleStore.contains(hash.toUpperCase()));
+        assertFalse(moduleStore.contains("../" + hash.substring(3)));
+        assertThrows(IllegalArgumentException.class, () -> moduleStore.getFile("../../evil"));
+        assertThrows(IOException.class, () -> moduleStore.adopt(jar, hash.substring(1) + "g"));
+        assertThrows(IOException.class, () -> moduleStore.link("..", new File(modulesDir, "linked.jar")));
+        assertTrue(moduleStore.getStoredJars().isEmpty());
+    }
+
+    private static void writeWithVersion(File source, String version, File target) throws IOException {
+        try (ZipFile zip = new ZipFile(source);
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(target))) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                byte[] content = readAll(zip.getInputStream(entry));
+                if (entry.getName().equals("module.yml")) {
+                    content = new String(content, StandardCharsets.UTF_8).replace("version: \"1.0.0\"", "version: \"" + version + "\"")
+                            .getBytes(StandardCharsets.UTF_8);
+                }
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -18,18 +18,20 @@
 
 package co.hygames.gamebox.utilities;
 
+import co.hygames.gamebox.GameBox;
 import co.hygames.gamebox.exceptions.module.InvalidModuleException;
+import co.hygames.gamebox.exceptions.module.ModuleDependencyCycleException;
+import co.hygames.gamebox.module.data.DependencyData;
 import co.hygames.gamebox.module.local.LocalModule;
-import org.junit.jupiter.api.Disabled;
+import co.hygames.gamebox.module.local.LocalModuleData;
+import co.hygames.gamebox.utilities.versioning.SemanticVersion;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -49,34 +51,132 @@ public class TestModuleUtility {
         }
     }
 
-    @Disabled("Needs injection and preparation of gamebox module info")
     @Test
     @DisplayName("Check dependent modules - no missing dependencies")
     public void checkDependencies() {
         Map<String, LocalModule> modules = getModules();
-        ModuleUtility.DependencyReport report = ModuleUtility.checkDependencies(modules);
+        ModuleUtility.DependencyReport report = ModuleUtility.checkDependencies(modules, GameBox.versionInfo);
         assertEquals(0, report.getRemovedModules().size());
     }
 
-    @Disabled("Needs injection and preparation of gamebox module info")
     @Test
     @DisplayName("Check dependent modules - missing soft dependency")
     public void checkSoftDependencies() {
         Map<String, LocalModule> modules = new HashMap<>(getModules());
         modules.remove("soft-lib-test-module");
-        ModuleUtility.DependencyReport report = ModuleUtility.checkDependencies(modules);
+        ModuleUtility.DependencyReport report = ModuleUtility.checkDependencies(modules, GameBox.versionInfo);
         assertEquals(0, report.getRemovedModules().size());
     }
 
-    @Disabled("Needs injection and preparation of gamebox module info")
     @Test
     @DisplayName("Check dependent modules - missing dependency")
     public void checkMissingDependencies() {
         Map<String, LocalModule> modules = new HashMap<>(getModules());
         modules.remove("lib-test-module");
-        ModuleUtility.DependencyReport report = ModuleUtility.checkDependencies(modules);
+        ModuleUtility.DependencyReport report = ModuleUtility.checkDependencies(modules, GameBox.versionInfo);
         assertEquals(1, report.getRemovedModules().size());
         assertTrue(report.getRemovedModules().contains("test-module"));
+        assertEquals(ModuleUtility.DependencyReport.Reason.MISSING_DEPENDENCY, report.getIssues().get(0).getReason());
+    }
+
+    @Test
+    @DisplayName("Check dependent modules - removals propagate to dependents")
+    public void checkTransitiveDependencies() {
+        Map<String, LocalModule> modules = new HashMap<>();
+        for (LocalModule module : Arrays.asList(module("a", hard("b")), module("b", hard("c")), module("c", hard("missing")),
+                module("d", soft("a")), module("e", hard("gamebox")), module("f", new DependencyData("e", "> 1.0")))) {
+            modules.put(module.getId(), module);
+        }
+        ModuleUtility.DependencyReport report = ModuleUtility.checkDependencies(modules, GameBox.versionInfo);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "f")), new HashSet<>(report.getRemovedModules()));
+        Map<String, ModuleUtility.DependencyReport.Reason> reasons = new HashMap<>();
+        report.getIssues().forEach(issue -> reasons.put(issue.getModuleId(), issue.getReason()));
+        assertEquals(ModuleUtility.DependencyReport.Reason.MISSING_DEPENDENCY, reasons.get("c"));
+        assertEquals(ModuleUtility.DependencyReport.Reason.DEPENDENCY_REMOVED, reasons.get("b"));
+        assertEquals(ModuleUtility.DependencyReport.Reason.DEPENDENCY_REMOVED, reasons.get("a"));
+        assertEquals(ModuleUtility.DependencyReport.Reason.VERSION_MISMATCH, reasons.get("f"));
+    }
+
+    @Test
+    @DisplayName("Sort modules - transitive dependencies come first")
+    public void sortChain() throws ModuleDependencyCycleException {
+        List<LocalModule> sorted = ModuleUtility.sortModulesByDependencies(Arrays.asList(
+                module("a", hard("b")), module("c"), module("b", hard("c"), hard("gamebox"))));
+        assertEquals(Arrays.asList("c", "b", "a"), ids(sorted));
+    }
+
+    @Test
+    @DisplayName("Sort modules - soft dependencies are optional edges")
+    public void sortSoftDependencies() throws ModuleDependencyCycleException {
+        List<LocalModule> sorted = ModuleUtility.sortModulesByDependencies(Arrays.asList(
+                module("a", soft("b"), soft("missing")), module("b")));
+        assertEquals(Arrays.asList("b", "a"), ids(sorted));
+    }
+
+    @Test
+    @DisplayName("Sort modules - cycles are reported with their path")
+    public void sortCycle() {
+        ModuleDependencyCycleException exception = assertThrows(ModuleDependencyCycleException.class,
+                () -> ModuleUtility.sortModulesByDependencies(Arrays.asList(
+                        module("x"), module("a", hard("b")), module("b", hard("c")), module("c", soft("a")))));
+        assertEquals(Arrays.asList("a", "b", "c", "a"), exception.getCycle());
+    }
+
+    @Test
+    @DisplayName("Sort modules - large synthetic dependency graph")
+    public void sortLargeGraph() throws ModuleDependencyCycleException {
+        int size = 10_000;
+        Random random = new Random(42);
+        List<LocalModule> modules = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<DependencyData> dependencies = new ArrayList<>();
+            // only depend on modules with a smaller index to keep the graph acyclic
+            for (int d = 0; i > 0 && d < 5; d++) {
+                dependencies.add(new DependencyData("module-" + random.nextInt(i), "~> 1.0").withSoftDependency(random.nextBoolean()));
+            }
+            modules.add(module("module-" + i, dependencies.toArray(new DependencyData[0])));
+        }
+        Collections.shuffle(modules, random);
+        List<LocalModule> sorted = ModuleUtility.sortModulesByDependencies(modules);
+        assertEquals(size, sorted.size());
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            position.put(sorted.get(i).getId(), i);
+        }
+        for (LocalModule module : sorted) {
+            for (DependencyData dependency : module.getVersionData().getDependencies()) {
+                assertTrue(position.get(dependency.getId()) < position.get(module.getId()));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Sort modules - ready modules are placed first in, first out")
+    public void sortModulesDeterministic() throws ModuleDependencyCycleException {
+        List<LocalModule> modules = Arrays.asList(module("x"), module("y", hard("x")), module("z"));
+        // 'y' only becomes ready after 'x' was placed, so it is queued behind 'z'
+        assertEquals(Arrays.asList("x", "z", "y"), ids(ModuleUtility.sortModulesByDependencies(modules)));
+    }
+
+    private static LocalModule module(String id, DependencyData... dependencies) {
+        return new LocalModule(new LocalModuleData()
+                .withId(id)
+                .withVersion(new SemanticVersion(1, 0, 0))
+                .withDependencies(Arrays.asList(dependencies)));
+    }
+
+    private static DependencyData hard(String id) {
+        return new DependencyData(id, "~> 1.0");
+    }
+
+    private static DependencyData soft(String id) {
+        return new DependencyData(id, "~> 1.0").withSoftDependency(true);
+    }
+
+    private static List<String> ids(List<LocalModule> modules) {
+        List<String> ids = new ArrayList<>();
+        modules.forEach(module -> ids.add(module.getId()));
+        return ids;
     }
 
     private Map<String, LocalModule> getModules() {
@@ -155,4 +155,31 @@ public class TestSemanticVersion {
         assertTrue(new SemanticVersion("1.1.1-alpha.1.one")
                 .isUpdateFor(new SemanticVersion("1.1.1-alpha.1.1.1")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNumericPreReleaseOrder() throws ParseException {
+        assertTrue(new SemanticVersion("1.0.0-alpha.10")
+                .isUpdateFor(new SemanticVersion("1.0.0-alpha.9")));
+        assertTrue(new SemanticVersion("1.0.0-alpha.2147483648")
+                .isUpdateFor(new SemanticVersion("1.0.0-alpha.2147483647")));
+    }
+
+    @Test
+    public void testHashCode() throws ParseException {
+        SemanticVersion parsed = new SemanticVersion("1.2.3-alpha.1+build.1");
+        SemanticVersion built = new SemanticVersion(1, 2, 3, new String[]{"alpha", "1"}, new String[]{"build", "1"});
+        assertEquals(parsed, built);
+        assertEquals(parsed.hashCode(), built.hashCode());
+        assertNotEquals(parsed, new SemanticVersion("1.2.3-alpha.1+build.2"));
+        assertSame(parsed.toString(), parsed.toString());
+    }
+
+    @Test
+    public void testInterning() throws ParseException {
+        SemanticVersion version = SemanticVersion.of("3.1.4-rc.1");
+        assertSame(version, SemanticVersion.of("3.1.4-rc.1"));
+        assertSame(version, SemanticVersion.of("03.1.4-rc.1"));
+        assertSame(version, SemanticVersion.intern(new SemanticVersion("3.1.4-rc.1")));
+        assertNotSame(version, SemanticVersion.of("3.1.4"));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * GameBox
+ * Copyright (C) 2019  Niklas Eicker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package co.hygames.gamebox.utilities.versioning;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Niklas Eicker
+ */
+public class TestVersionConstraint {
+
+    @Test
+    @DisplayName("Equal constrain strings should share one parsed instance")
+    public void testCache() throws ParseException {
+        assertSame(VersionConstraint.of(">= 1.2, < 2"), VersionConstraint.of(">= 1.2, < 2"));
+        assertNotSame(VersionConstraint.parse(">= 1.2"), VersionConstraint.parse(">= 1.2"));
+    }
+
+    @Test
+    @DisplayName("The twiddle wakka operator should be expanded into a lower and an upper bound")
+    public void testTwiddleWakkaBounds() throws ParseException {
+        List<VersionConstraint.Bound> bounds = VersionConstraint.of("~> 1.2.3").getBounds();
+        assertEquals(2, bounds.size());
+        assertEquals(VersionConstraint.Operator.GREATER_OR_EQUAL, bounds.get(0).getOperator());
+        assertEquals("GREATER_OR_EQUAL 1.2.3", bounds.get(0).toString());
+        assertEquals(VersionConstraint.Operator.LESS, bounds.get(1).getOperator());
+        assertEquals("LESS 1.3.0", bounds.get(1).toString());
+        assertEquals("LESS 2.0.0", VersionConstraint.of("~> 1.2").getBounds().get(1).toString());
+        assertEquals("LESS 2.0.0", VersionConstraint.of("~> 1").getBounds().get(1).toString());
+    }
+
+    @Test
+    @DisplayName("Meta data should be ignored when matching")
+    public void testMetaData() throws ParseException {
+        VersionConstraint constraint = VersionConstraint.of("1.2.3-beta");
+        assertTrue(constraint.matches(new SemanticVersion("1.2.3")));
+        assertTrue(constraint.matches(new SemanticVersion("1.2.3-alpha+build.5")));
+        assertFalse(constraint.matches(new SemanticVersion("1.2.4")));
+    }
+
+    @Test
+    @DisplayName("Invalid constrains should fail while parsing")
+    public void testInvalidConstrains() {
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class, () -> VersionConstraint.of("+ 1.0.0")),
+                () -> assertThrows(IllegalArgumentException.class, () -> VersionConstraint.of("< 1.0.0, ! 2")),
+                () -> assertThrows(IllegalArgumentException.class, () -> VersionConstraint.of("1.0.0.0")),
+                () -> assertThrows(ParseException.class, () -> VersionConstraint.of("1.x")),
+                () -> assertThrows(ParseException.class, () -> VersionConstraint.of(">")),
+                () -> assertThrows(ParseException.class, () -> VersionConstraint.of("1..2"))
+        );
+    }
+}